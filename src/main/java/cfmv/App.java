@@ -6,7 +6,10 @@ import java.util.List;
 
 import clustering.Cluster;
 import clustering.KMeans;
+import clustering.KSweep;
 import data.DataSet;
+import data.Ingestion;
+import data.Storage;
 
 /**
  * This class is responsible for conducting the execution of the different
@@ -32,7 +35,7 @@ public class App {
 			throws NumberFormatException, IOException {
 		System.out.println("> Running...");
 
-		DataSet ds = new DataSet(incompleteDS);
+		DataSet ds = new DataSet(incompleteDS, Ingestion.CACHED);
 		ds.standardizePoints();
 
 		KMeans kMeans = new KMeans(ds);
@@ -44,6 +47,79 @@ public class App {
 		f.replaceMissedValues();
 
 		ds.exportDataSet(output);
+		ds.close();
+
+		System.out.println("> Finished!");
+	}
+
+	/**
+	 * Recommend the number of clusters of a data set, executing k-means for
+	 * each k of a range. The data set is read and standardized once for all
+	 * the range.
+	 * 
+	 * @param incompleteDS
+	 *            csv file with the data set that has missed values
+	 * @param minK
+	 *            smallest k (2 at least)
+	 * @param maxK
+	 *            biggest k
+	 * @return recommended k
+	 * @throws NumberFormatException
+	 *             format of the data set not valid
+	 * @throws IOException
+	 *             error at parsing CSV files
+	 */
+	public static int chooseK(File incompleteDS, int minK, int maxK)
+			throws NumberFormatException, IOException {
+		System.out.println("> Running...");
+
+		DataSet ds = new DataSet(incompleteDS, Ingestion.CACHED);
+		ds.standardizePoints();
+
+		int k = new KSweep(ds).run(minK, maxK);
+		ds.close();
+
+		System.out.println("> Finished!");
+		return k;
+	}
+
+	/**
+	 * Run the application without keeping the whole data set in memory. The
+	 * clusters are built with a sample of the data set and then the file is
+	 * read again row by row, filling the missed values of each row and writing
+	 * it at once.
+	 * 
+	 * @param incompleteDS
+	 *            csv file with the data set that has missed values
+	 * @param output
+	 *            directory where the output data set will be created
+	 * @param k
+	 *            argument for the k-means algorithm
+	 * @param sampleStep
+	 *            one row out of this number of rows is used to build the
+	 *            clusters (1 to use all)
+	 * @throws NumberFormatException
+	 *             format of the data set not valid
+	 * @throws IOException
+	 *             error at parsing CSV files
+	 */
+	public static void runStreaming(File incompleteDS, File output, int k,
+			int sampleStep) throws NumberFormatException, IOException {
+		System.out.println("> Running...");
+
+		DataSet ds = new DataSet(incompleteDS, Ingestion.CACHED, Storage.AUTO,
+				sampleStep);
+		ds.standardizePoints();
+
+		KMeans kMeans = new KMeans(ds);
+		List<Cluster> clusters = kMeans.run(k);
+
+		ds.destandardizePoints();
+
+		// Only centroids and means are kept to process the file
+		StreamingFinder f = new StreamingFinder(ds, clusters);
+		ds.close();
+		f.replaceMissedValues(incompleteDS, output);
 
 		System.out.println("> Finished!");
 	}
@@ -1,16 +1,14 @@
 package cfmv;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
+import java.util.PrimitiveIterator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import clustering.Cluster;
 import data.DataSet;
-import data.Point;
 
 /**
  * Fill the missed values of a dataset with the mean of the feature in its
@@ -50,47 +48,31 @@ public class Finder {
 					+ c.hasMissedFeatures());
 
 			if (c.hasMissedFeatures()) {
-				// Map feature -> mean
-				Map<Integer, Float> mean = new HashMap<Integer, Float>();
-				// Map feature -> list of points with the value of the feature
-				// missed
-				Map<Integer, List<Point>> incompletePoints = new HashMap<Integer, List<Point>>();
-
-				// Prepare maps with an entry per misdded feature
-				for (int f : c.getMissedFeatures()) {
-					mean.put(f, new Float(0));
-					incompletePoints.put(f, new ArrayList<Point>());
-				}
-
-				// Register points with missed values and sum all values of each
-				// feature with missed values to calculate the mean
-				for (Point p : c.getPoints()) {
-					for (int f : c.getMissedFeatures()) {
-						if (p.isMissedFeature(f)) {
-							incompletePoints.get(f).add(p);
-						} else {
-							mean.put(f, mean.get(f) + p.getValue(f));
+				BitSet missedFeatures = c.getMissedFeatures();
+				for (int f = missedFeatures.nextSetBit(0); f >= 0; f = missedFeatures
+						.nextSetBit(f + 1)) {
+					// Sum all values of the feature of the points that have it
+					// to calculate the mean
+					float mean = 0;
+					int nValues = 0;
+					for (PrimitiveIterator.OfInt i = c.points(); i.hasNext();) {
+						int p = i.nextInt();
+						if (!ds.isMissedFeature(p, f)) {
+							mean += ds.getValue(p, f);
+							nValues++;
 						}
 					}
-				}
-
-				// Divide by total number of points that don't have a missed
-				// value for this feature to obtain the mean
-				for (int f : c.getMissedFeatures()) {
-					mean.put(f, mean.get(f)
-							/ (c.nPoints() - incompletePoints.get(f).size()));
-				}
+					// Divide by total number of points that don't have a
+					// missed value for this feature to obtain the mean
+					mean /= nValues;
 
-				// Replace missed values by the mean of the feature
-				for (int f : incompletePoints.keySet()) {
-					String type = ds.getType(f);
-					for (Point p : incompletePoints.get(f)) {
-						if (type.equals("i")) {
-							// Integer
-							p.setValue(f, Math.round(mean.get(f)));
-						} else {
-							// Decimal
-							p.setValue(f, mean.get(f));
+					// Replace missed values by the mean of the feature
+					float value = ds.getType(f).equals("i") ? Math.round(mean)
+							: mean;
+					for (PrimitiveIterator.OfInt i = c.points(); i.hasNext();) {
+						int p = i.nextInt();
+						if (ds.isMissedFeature(p, f)) {
+							ds.setValue(p, f, value);
 						}
 					}
 				}
@@ -0,0 +1,168 @@
+package cfmv;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import clustering.Cluster;
+import data.DataSet;
+import data.Distance;
+import data.Point;
+import data.RowReader;
+import data.RowWriter;
+
+/**
+ * Fill the missed values of a data set file that doesn't need to fit in
+ * memory. Clusters are built with the points in memory (usually a sample of
+ * the file) and only their centroids and the mean of each feature in each
+ * cluster are kept. Then the file is read again row by row: each row with
+ * missed values is assigned to its closest centroid, its missed values are
+ * replaced by the means of that cluster and it is written at once.
+ */
+public class StreamingFinder {
+	/** Data set used to build the clusters */
+	DataSet ds;
+	/** Features used to measure distances */
+	int[] active;
+	/** Centroids of the clusters (standardized and compacted) */
+	float[][] centroids;
+	/**
+	 * Value that replaces the missed values of each feature in each cluster
+	 * (null for features without missed values)
+	 */
+	float[][] replacements;
+
+	/** Logger */
+	private static final Logger logger = LoggerFactory
+			.getLogger(StreamingFinder.class);
+
+	/**
+	 * Keep the centroids of the clusters and calculate the mean of each
+	 * feature with missed values in each cluster. Once created, the values of
+	 * the data set are not needed anymore.
+	 * 
+	 * @param ds
+	 *            data set used to build the clusters (not standardized)
+	 * @param clusters
+	 *            list of clusters
+	 */
+	public StreamingFinder(DataSet ds, List<Cluster> clusters) {
+		this.ds = ds;
+		this.active = ds.getCompleteFeatures();
+		this.centroids = new float[clusters.size()][];
+		this.replacements = new float[clusters.size()][];
+
+		for (int c = 0; c < clusters.size(); c++) {
+			Cluster cluster = clusters.get(c);
+			centroids[c] = Distance.compact(cluster.getCentroid().getValues(),
+					active);
+			replacements[c] = new float[ds.nFeatures()];
+			for (int f = 0; f < ds.nFeatures(); f++) {
+				if (!ds.hasMissedValues(f)) {
+					continue;
+				}
+				float mean = 0;
+				int nValues = 0;
+				for (PrimitiveIterator.OfInt i = cluster.points(); i
+						.hasNext();) {
+					int p = i.nextInt();
+					if (!ds.isMissedFeature(p, f)) {
+						mean += ds.getValue(p, f);
+						nValues++;
+					}
+				}
+				// Rows of the file that aren't in the data set can fall in a
+				// cluster without values of the feature: use the global mean
+				mean = nValues > 0 ? mean / nValues
+						: (float) ds.getStats().getMean(f);
+				replacements[c][f] = ds.getType(f).equals("i")
+						? Math.round(mean) : mean;
+			}
+			logger.debug("Cluster " + (c + 1) + " replacements: "
+					+ new Point(replacements[c]).toString());
+		}
+	}
+
+	/**
+	 * Copy a data set file replacing its missed values by the mean of the
+	 * feature in the cluster of the closest centroid.
+	 * 
+	 * @param incompleteDS
+	 *            CSV file with the data set with missed values
+	 * @param output
+	 *            directory where the output data set will be created
+	 * @throws IOException
+	 *             error at reading or writing CSV files
+	 */
+	public void replaceMissedValues(File incompleteDS, File output)
+			throws IOException {
+		System.out.println("> Replacing missed values while copying rows...");
+
+		RowReader reader = new RowReader(incompleteDS);
+		try {
+			if (reader.getHeaders().length != ds.nFeatures()) {
+				throw new IOException(
+						"Inconsistent data set. Different features");
+			}
+			RowWriter writer = new RowWriter(new File(output, "output.csv"),
+					reader.getHeaders(), reader.getTypes());
+			try {
+				float[] values = new float[ds.nFeatures()];
+				float[] standardized = new float[ds.nFeatures()];
+				float[] compacted = new float[active.length];
+				long nRows = 0;
+				long nReplaced = 0;
+				while (reader.next(values)) {
+					nRows++;
+					if (reader.nMissed() > 0) {
+						System.arraycopy(values, 0, standardized, 0,
+								values.length);
+						ds.standardize(standardized);
+						for (int i = 0; i < active.length; i++) {
+							compacted[i] = standardized[active[i]];
+						}
+						float[] replacement = replacements[closest(compacted)];
+						for (int i = 0; i < reader.nMissed(); i++) {
+							int f = reader.getMissed(i);
+							values[f] = replacement[f];
+						}
+						nReplaced += reader.nMissed();
+					}
+					writer.write(values);
+				}
+				System.out.println("      " + nReplaced
+						+ " missed values replaced in " + nRows + " rows");
+			} finally {
+				writer.close();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Get the closest centroid to a point.
+	 * 
+	 * @param values
+	 *            standardized values of the point, compacted to the features
+	 *            used to measure distances
+	 * @return index of the closest centroid
+	 */
+	private int closest(float[] values) {
+		int closest = 0;
+		double minimumDistance = Double.MAX_VALUE;
+		for (int c = 0; c < centroids.length; c++) {
+			// Squared Euclidian distance between the point and the centroid
+			double distance = Distance.squared(values, centroids[c]);
+			if (minimumDistance > distance) {
+				minimumDistance = distance;
+				closest = c;
+			}
+		}
+		return closest;
+	}
+}
@@ -0,0 +1,42 @@
+package clustering;
+
+/**
+ * Ways of assigning the points to their closest centroid in each iteration of
+ * k-means. All of them build the same clusters, except that {@link #BLOCKED}
+ * and {@link #FILTERING} can break differently the ties of points almost at
+ * the same distance of two centroids.
+ */
+public enum Algorithm {
+	/** Distances from every point to every centroid */
+	LLOYD,
+	/**
+	 * One upper and one lower bound of the distances of each point, which
+	 * skip most of the distances when k is small or medium
+	 */
+	HAMERLY,
+	/**
+	 * One upper bound and k lower bounds of the distances of each point
+	 * (memory for k floats per point), which skip most of the distances when
+	 * k is big
+	 */
+	ELKAN,
+	/**
+	 * Distances from every point to every centroid as |x|^2 - 2 x·c + |c|^2,
+	 * by tiles of points and centroids that stay in the cache, which is faster
+	 * than {@link #LLOYD} when k and the number of features are big
+	 */
+	BLOCKED,
+	/**
+	 * KD-tree of the points (built once, with a copy of the values used to
+	 * measure distances) traversed discarding the centroids that can't be the
+	 * closest ones of each node, so whole nodes are assigned at once; much
+	 * faster than the others when there are few features (less than 15)
+	 */
+	FILTERING,
+	/**
+	 * One upper bound and a lower bound for each group of about ten centroids
+	 * (memory for k / 10 floats per point), which skip whole groups and most
+	 * of the distances when k is in the hundreds or thousands
+	 */
+	YINYANG
+}
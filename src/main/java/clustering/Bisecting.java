@@ -0,0 +1,458 @@
+package clustering;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import data.DataSet;
+import data.Distance;
+
+/**
+ * Bisecting k-means: it starts with a single cluster and keeps splitting the
+ * clusters with the highest within-cluster sum of squares (SSE) in two with
+ * 2-means, until there are k clusters. Each point is only compared with two
+ * centroids, so the cost grows with the number of rounds of splits instead of
+ * k, and no cluster is left empty.
+ * <p>
+ * Each round splits half of the clusters (the ones with the highest SSE, and
+ * no more than the ones missing to get k) at the same time: the splits are
+ * independent, and the rows of each one are also assigned in parallel. The
+ * rows of each cluster are a range of an array, so splitting a cluster only
+ * reorders its range. Partial sums are reduced in order and the random numbers
+ * of a split depend only on its range, so the result doesn't depend on the
+ * number of threads.
+ */
+class Bisecting {
+	/** Number of rows assigned by each task */
+	private static final int ROWS_PER_TASK = 1 << 14;
+	/** Maximum number of iterations of the 2-means of a split */
+	private static final int SPLIT_ITERATIONS = 20;
+
+	/** Data set */
+	private final DataSet ds;
+	/** Features used to measure distances */
+	private final int[] active;
+	/** Pool of threads */
+	private final ForkJoinPool pool;
+	/** Seed of the random numbers */
+	private final long seed;
+	/** Rows of the data set sorted by cluster */
+	private int[] rows;
+	/** Rows while a cluster is split */
+	private int[] buffer;
+	/** Side of each position of the rows in the split of its cluster */
+	private byte[] sides;
+	/** Number of rounds of splits */
+	int nRounds;
+	/** Number of distances calculated */
+	long nDistances;
+	/** Sum of the squared distances of the rows to their centroids */
+	double inertia;
+
+	/**
+	 * Create a new bisecting k-means.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param active
+	 *            features used to measure distances
+	 * @param pool
+	 *            pool of threads
+	 * @param seed
+	 *            seed of the random numbers
+	 */
+	Bisecting(DataSet ds, int[] active, ForkJoinPool pool, long seed) {
+		this.ds = ds;
+		this.active = active;
+		this.pool = pool;
+		this.seed = seed;
+	}
+
+	/**
+	 * Split the data set in k clusters, or less if there are not enough
+	 * different points.
+	 *
+	 * @param k
+	 *            number of clusters
+	 * @param labels
+	 *            array where to put the cluster of each row
+	 * @return compacted values of the centroid of each cluster
+	 */
+	float[][] run(int k, int[] labels) {
+		int n = ds.nPoints();
+		if (n == 0 || k < 1) {
+			return new float[0][];
+		}
+		rows = new int[n];
+		for (int r = 0; r < n; r++) {
+			rows[r] = r;
+		}
+		buffer = new int[n];
+		sides = new byte[n];
+
+		// Sums of the whole data set
+		List<Pass> tasks = passes(0, n,
+				new float[][] { new float[active.length] }, true);
+		KMeans.invokeAll(pool, tasks);
+		Pass root = sum(tasks);
+		List<Leaf> leaves = new ArrayList<Leaf>();
+		leaves.add(new Leaf(0, n, root.sums[0], root.squares[0]));
+
+		while (leaves.size() < k) {
+			// Clusters with the highest SSE (by position if there are ties)
+			List<Leaf> candidates = new ArrayList<Leaf>();
+			for (Leaf leaf : leaves) {
+				if (leaf.splittable) {
+					candidates.add(leaf);
+				}
+			}
+			Collections.sort(candidates, new Comparator<Leaf>() {
+				@Override
+				public int compare(Leaf a, Leaf b) {
+					return a.sse != b.sse ? Double.compare(b.sse, a.sse)
+							: Integer.compare(a.start, b.start);
+				}
+			});
+			int nSplits = Math.min(candidates.size(),
+					Math.min(k - leaves.size(), (leaves.size() + 1) / 2));
+			if (nSplits == 0) {
+				break;
+			}
+			List<Split> splits = new ArrayList<Split>();
+			for (Leaf leaf : candidates.subList(0, nSplits)) {
+				splits.add(new Split(leaf));
+			}
+			KMeans.invokeAll(pool, splits);
+			nRounds++;
+
+			// Children take the place of their parent
+			List<Leaf> next = new ArrayList<Leaf>();
+			int s = 0;
+			Collections.sort(splits, new Comparator<Split>() {
+				@Override
+				public int compare(Split a, Split b) {
+					return Integer.compare(a.leaf.start, b.leaf.start);
+				}
+			});
+			for (Leaf leaf : leaves) {
+				Split split = s < splits.size() && splits.get(s).leaf == leaf
+						? splits.get(s++) : null;
+				if (split == null) {
+					next.add(leaf);
+				} else if (split.left == null) {
+					leaf.splittable = false;
+					next.add(leaf);
+				} else {
+					next.add(split.left);
+					next.add(split.right);
+				}
+			}
+			leaves = next;
+		}
+
+		float[][] centroids = new float[leaves.size()][];
+		inertia = 0;
+		for (int c = 0; c < centroids.length; c++) {
+			Leaf leaf = leaves.get(c);
+			int count = leaf.end - leaf.start;
+			centroids[c] = new float[active.length];
+			for (int i = 0; i < active.length; i++) {
+				centroids[c][i] = (float) (leaf.sums[i] / count);
+			}
+			for (int i = leaf.start; i < leaf.end; i++) {
+				labels[rows[i]] = c;
+			}
+			inertia += leaf.sse;
+		}
+		return centroids;
+	}
+
+	/**
+	 * Assign the rows of a range to their closest center in parallel and sum
+	 * them by center. It must be called from a task of the pool.
+	 *
+	 * @param start
+	 *            first position of the range
+	 * @param end
+	 *            position after the last one
+	 * @param centers
+	 *            compacted values of the centers (one or two)
+	 * @param first
+	 *            true if the sides of the rows are not set yet
+	 * @return first task, with the figures of the whole range
+	 */
+	private Pass pass(int start, int end, float[][] centers, boolean first) {
+		List<Pass> tasks = passes(start, end, centers, first);
+		ForkJoinTask.invokeAll(tasks);
+		return sum(tasks);
+	}
+
+	/**
+	 * Create the tasks that assign the rows of a range to their closest
+	 * center.
+	 *
+	 * @param start
+	 *            first position of the range
+	 * @param end
+	 *            position after the last one
+	 * @param centers
+	 *            compacted values of the centers (one or two)
+	 * @param first
+	 *            true if the sides of the rows are not set yet
+	 * @return tasks, in the order of the rows
+	 */
+	private List<Pass> passes(int start, int end, float[][] centers,
+			boolean first) {
+		List<Pass> tasks = new ArrayList<Pass>();
+		for (int from = start; from < end; from += ROWS_PER_TASK) {
+			tasks.add(new Pass(from, Math.min(end, from + ROWS_PER_TASK),
+					centers, first));
+		}
+		return tasks;
+	}
+
+	/**
+	 * Add up the figures of the tasks of a range once they are done. They are
+	 * reduced in order, so the sums don't depend on the threads.
+	 *
+	 * @param tasks
+	 *            tasks of the range, in the order of the rows
+	 * @return first task, with the figures of the whole range
+	 */
+	private Pass sum(List<Pass> tasks) {
+		Pass total = tasks.get(0);
+		float[][] centers = total.centers;
+		for (int t = 1; t < tasks.size(); t++) {
+			Pass task = tasks.get(t);
+			for (int c = 0; c < centers.length; c++) {
+				for (int i = 0; i < active.length; i++) {
+					total.sums[c][i] += task.sums[c][i];
+				}
+				total.counts[c] += task.counts[c];
+				total.squares[c] += task.squares[c];
+			}
+			total.distances += task.distances;
+			total.nChanged += task.nChanged;
+		}
+		synchronized (this) {
+			nDistances += (long) (tasks.get(tasks.size() - 1).end
+					- total.start) * centers.length;
+		}
+		return total;
+	}
+
+	/**
+	 * Cluster: a range of the rows with their sums.
+	 */
+	private static class Leaf {
+		/** First position of the rows of the cluster */
+		final int start;
+		/** Position after the last row of the cluster */
+		final int end;
+		/** Sum of each active feature of the rows */
+		final double[] sums;
+		/** Sum of the squared distances of the rows to their mean */
+		final double sse;
+		/** If the cluster can still be split */
+		boolean splittable;
+
+		/**
+		 * Create a cluster.
+		 *
+		 * @param start
+		 *            first position of the rows
+		 * @param end
+		 *            position after the last row
+		 * @param sums
+		 *            sum of each active feature of the rows
+		 * @param squares
+		 *            sum of the squared values of the rows
+		 */
+		Leaf(int start, int end, double[] sums, double squares) {
+			this.start = start;
+			this.end = end;
+			this.sums = sums;
+			// Sum of |x - m|^2 = sum of |x|^2 - |sum|^2 / n
+			double norm = 0;
+			for (double sum : sums) {
+				norm += sum * sum;
+			}
+			this.sse = Math.max(0, squares - norm / (end - start));
+			this.splittable = end - start > 1;
+		}
+	}
+
+	/**
+	 * Task that splits a cluster in two with 2-means. The first center is a
+	 * random row and the second one is chosen with k-means++. If all the rows
+	 * are equal, the cluster can't be split.
+	 */
+	private class Split extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/** Cluster to split */
+		final Leaf leaf;
+		/** First half (null if the cluster can't be split) */
+		Leaf left;
+		/** Second half (null if the cluster can't be split) */
+		Leaf right;
+
+		/**
+		 * Create a split.
+		 *
+		 * @param leaf
+		 *            cluster to split
+		 */
+		Split(Leaf leaf) {
+			this.leaf = leaf;
+		}
+
+		@Override
+		protected void compute() {
+			int start = leaf.start;
+			int end = leaf.end;
+			Random random = new Random(seed + start);
+			float[][] centers = new float[2][active.length];
+			ds.getValues(rows[start + random.nextInt(end - start)], active,
+					centers[0]);
+
+			// Second center with probability proportional to the squared
+			// distance to the first one
+			Pass toFirst = pass(start, end, new float[][] { centers[0] }, true);
+			if (toFirst.distances == 0) {
+				return;
+			}
+			double target = random.nextDouble() * toFirst.distances;
+			float[] values = new float[active.length];
+			int chosen = end - 1;
+			for (int i = start; i < end; i++) {
+				ds.getValues(rows[i], active, values);
+				target -= Distance.squared(values, centers[0]);
+				if (target < 0) {
+					chosen = i;
+					break;
+				}
+			}
+			ds.getValues(rows[chosen], active, centers[1]);
+
+			Pass assignment = null;
+			for (int iteration = 0; iteration < SPLIT_ITERATIONS; iteration++) {
+				assignment = pass(start, end, centers, iteration == 0);
+				if (assignment.counts[0] == 0 || assignment.counts[1] == 0) {
+					return;
+				}
+				if (iteration > 0 && assignment.nChanged == 0) {
+					break;
+				}
+				for (int c = 0; c < 2; c++) {
+					for (int i = 0; i < active.length; i++) {
+						centers[c][i] = (float) (assignment.sums[c][i]
+								/ assignment.counts[c]);
+					}
+				}
+			}
+
+			// First the rows of the first half, keeping their order
+			int position = start;
+			for (int i = start; i < end; i++) {
+				if (sides[i] == 0) {
+					buffer[position++] = rows[i];
+				}
+			}
+			for (int i = start; i < end; i++) {
+				if (sides[i] == 1) {
+					buffer[position++] = rows[i];
+				}
+			}
+			System.arraycopy(buffer, start, rows, start, end - start);
+			int middle = start + assignment.counts[0];
+			left = new Leaf(start, middle, assignment.sums[0],
+					assignment.squares[0]);
+			right = new Leaf(middle, end, assignment.sums[1],
+					assignment.squares[1]);
+		}
+	}
+
+	/**
+	 * Task that assigns the rows of a range to their closest center (the
+	 * first one if there are ties) and sums them by center.
+	 */
+	private class Pass extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/** First position of the range */
+		private final int start;
+		/** Position after the last one */
+		private final int end;
+		/** Compacted values of the centers */
+		private final float[][] centers;
+		/** If the sides of the rows are not set yet */
+		private final boolean first;
+		/** Sum of each active feature of the rows of each center */
+		final double[][] sums;
+		/** Number of rows of each center */
+		final int[] counts;
+		/** Sum of the squared values of the rows of each center */
+		final double[] squares;
+		/** Sum of the squared distances of the rows to their center */
+		double distances;
+		/** Number of rows whose center changed */
+		int nChanged;
+
+		/**
+		 * Create a pass.
+		 *
+		 * @param start
+		 *            first position of the range
+		 * @param end
+		 *            position after the last one
+		 * @param centers
+		 *            compacted values of the centers
+		 * @param first
+		 *            true if the sides of the rows are not set yet
+		 */
+		Pass(int start, int end, float[][] centers, boolean first) {
+			this.start = start;
+			this.end = end;
+			this.centers = centers;
+			this.first = first;
+			this.sums = new double[centers.length][active.length];
+			this.counts = new int[centers.length];
+			this.squares = new double[centers.length];
+		}
+
+		@Override
+		protected void compute() {
+			float[] values = new float[active.length];
+			for (int i = start; i < end; i++) {
+				ds.getValues(rows[i], active, values);
+				byte side = 0;
+				double distance = Distance.squared(values, centers[0]);
+				if (centers.length > 1) {
+					double other = Distance.squared(values, centers[1]);
+					if (other < distance) {
+						side = 1;
+						distance = other;
+					}
+				}
+				if (!first && sides[i] != side) {
+					nChanged++;
+				}
+				sides[i] = side;
+				distances += distance;
+				counts[side]++;
+				double[] sum = sums[side];
+				for (int f = 0; f < values.length; f++) {
+					double value = values[f];
+					sum[f] += value;
+					squares[side] += value * value;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package clustering;
+
+import java.util.Arrays;
+
+import data.DataSet;
+
+/**
+ * Partition that calculates the distance from each row to every centroid as
+ * |x|^2 - 2 x·c + |c|^2, so only the dot products x·c are calculated in each
+ * iteration: the norms of the rows are calculated in the first pass and the
+ * norms of the centroids once per iteration.
+ * <p>
+ * Rows are processed by tiles and centroids by groups small enough to stay in
+ * the cache while all the rows of the tile use them. Two rows are multiplied
+ * by four centroids at once, so each value read is used in several of the
+ * eight dot products kept in registers.
+ * <p>
+ * The expansion doesn't round as the difference of the values, so points
+ * almost at the same distance of two centroids can be assigned to a different
+ * one than with {@link LloydPartition}.
+ */
+class BlockedPartition extends Partition {
+	private static final long serialVersionUID = 1L;
+
+	/** Number of rows of each tile */
+	private static final int ROWS_PER_TILE = 64;
+	/** Number of values of the centroids of a group (16 KB) */
+	private static final int VALUES_PER_GROUP = 4096;
+
+	/** Data set */
+	private final DataSet ds;
+	/** Squared norm of each row of the partition */
+	private final double[] rowNorms;
+	/** Compacted values of the rows of the tile */
+	private final float[][] tile;
+	/** Closest centroid of each row of the tile */
+	private final int[] closest;
+	/** Squared distance to the closest centroid of each row of the tile */
+	private final double[] closestDistance;
+	/** Number of centroids of each group */
+	private final int centroidsPerGroup;
+
+	/**
+	 * Create a new partition.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param from
+	 *            first row
+	 * @param to
+	 *            row after the last row
+	 * @param active
+	 *            features used to measure distances
+	 * @param labels
+	 *            array where to put the cluster of each row
+	 * @param k
+	 *            number of clusters
+	 */
+	BlockedPartition(DataSet ds, int from, int to, int[] active, int[] labels,
+			int k) {
+		super(ds, from, to, active, labels, k);
+		this.ds = ds;
+		this.rowNorms = new double[to - from];
+		this.tile = new float[ROWS_PER_TILE][active.length];
+		this.closest = new int[ROWS_PER_TILE];
+		this.closestDistance = new double[ROWS_PER_TILE];
+		this.centroidsPerGroup = Math.max(4,
+				VALUES_PER_GROUP / Math.max(1, active.length) / 4 * 4);
+	}
+
+	@Override
+	protected void compute() {
+		start();
+		for (int begin = from; begin < to; begin += ROWS_PER_TILE) {
+			int n = Math.min(ROWS_PER_TILE, to - begin);
+			for (int r = 0; r < n; r++) {
+				ds.getValues(begin + r, active, tile[r]);
+				if (first) {
+					rowNorms[begin + r - from] = norm(tile[r]);
+				}
+			}
+			assignTile(begin, n);
+			for (int r = 0; r < n; r++) {
+				update(begin + r, tile[r], closest[r]);
+			}
+		}
+	}
+
+	@Override
+	int assign(int row, float[] values) {
+		float[][] centroids = this.centroids.values;
+		double[] norms = this.centroids.norms;
+		double rowNorm = first ? norm(values) : rowNorms[row - from];
+		int closest = 0;
+		double minimumDistance = Double.MAX_VALUE;
+		for (int c = 0; c < centroids.length; c++) {
+			double distance = rowNorm - 2 * dot(values, centroids[c])
+					+ norms[c];
+			if (minimumDistance > distance) {
+				minimumDistance = distance;
+				closest = c;
+			}
+		}
+		nDistances += centroids.length;
+		return closest;
+	}
+
+	/**
+	 * Find the closest centroid to each row of the tile.
+	 *
+	 * @param begin
+	 *            first row of the tile
+	 * @param n
+	 *            number of rows of the tile
+	 */
+	private void assignTile(int begin, int n) {
+		float[][] centroids = this.centroids.values;
+		double[] norms = this.centroids.norms;
+		int k = centroids.length;
+		Arrays.fill(closest, 0);
+		Arrays.fill(closestDistance, Double.MAX_VALUE);
+
+		// Groups of centroids in order, so ties keep the first centroid
+		for (int group = 0; group < k; group += centroidsPerGroup) {
+			int end = Math.min(k, group + centroidsPerGroup);
+			// Two rows by four centroids at once
+			int r = 0;
+			for (; r + 1 < n; r += 2) {
+				float[] x = tile[r];
+				float[] y = tile[r + 1];
+				double xNorm = rowNorms[begin + r - from];
+				double yNorm = rowNorms[begin + r + 1 - from];
+				int c = group;
+				for (; c + 3 < end; c += 4) {
+					float[] c0 = centroids[c];
+					float[] c1 = centroids[c + 1];
+					float[] c2 = centroids[c + 2];
+					float[] c3 = centroids[c + 3];
+					double x0 = 0;
+					double x1 = 0;
+					double x2 = 0;
+					double x3 = 0;
+					double y0 = 0;
+					double y1 = 0;
+					double y2 = 0;
+					double y3 = 0;
+					for (int i = 0; i < x.length; i++) {
+						double u = x[i];
+						double v = y[i];
+						double w0 = c0[i];
+						double w1 = c1[i];
+						double w2 = c2[i];
+						double w3 = c3[i];
+						x0 += u * w0;
+						x1 += u * w1;
+						x2 += u * w2;
+						x3 += u * w3;
+						y0 += v * w0;
+						y1 += v * w1;
+						y2 += v * w2;
+						y3 += v * w3;
+					}
+					closer(r, c, xNorm - 2 * x0 + norms[c]);
+					closer(r, c + 1, xNorm - 2 * x1 + norms[c + 1]);
+					closer(r, c + 2, xNorm - 2 * x2 + norms[c + 2]);
+					closer(r, c + 3, xNorm - 2 * x3 + norms[c + 3]);
+					closer(r + 1, c, yNorm - 2 * y0 + norms[c]);
+					closer(r + 1, c + 1, yNorm - 2 * y1 + norms[c + 1]);
+					closer(r + 1, c + 2, yNorm - 2 * y2 + norms[c + 2]);
+					closer(r + 1, c + 3, yNorm - 2 * y3 + norms[c + 3]);
+				}
+				for (; c < end; c++) {
+					closer(r, c, xNorm - 2 * dot(x, centroids[c]) + norms[c]);
+					closer(r + 1, c,
+							yNorm - 2 * dot(y, centroids[c]) + norms[c]);
+				}
+			}
+
+			// Last row of a tile with an odd number of rows
+			for (; r < n; r++) {
+				float[] x = tile[r];
+				double xNorm = rowNorms[begin + r - from];
+				for (int c = group; c < end; c++) {
+					closer(r, c, xNorm - 2 * dot(x, centroids[c]) + norms[c]);
+				}
+			}
+		}
+		nDistances += (long) n * k;
+	}
+
+	/**
+	 * Keep a centroid as the closest one to a row of the tile if it is
+	 * closer than the closest one so far.
+	 *
+	 * @param r
+	 *            row of the tile
+	 * @param c
+	 *            index of the centroid
+	 * @param distance
+	 *            squared distance from the row to the centroid
+	 */
+	private void closer(int r, int c, double distance) {
+		if (closestDistance[r] > distance) {
+			closestDistance[r] = distance;
+			closest[r] = c;
+		}
+	}
+
+	/**
+	 * Dot product of two compacted points.
+	 *
+	 * @param a
+	 *            values of a point
+	 * @param b
+	 *            values of another point
+	 * @return dot product
+	 */
+	private static double dot(float[] a, float[] b) {
+		double dot = 0;
+		for (int i = 0; i < a.length; i++) {
+			dot += (double) a[i] * b[i];
+		}
+		return dot;
+	}
+
+	/**
+	 * Squared norm of a compacted point.
+	 *
+	 * @param values
+	 *            values of the point
+	 * @return squared norm
+	 */
+	private static double norm(float[] values) {
+		return dot(values, values);
+	}
+}
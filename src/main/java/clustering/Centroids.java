@@ -0,0 +1,161 @@
+package clustering;
+
+import java.util.Arrays;
+
+import data.Distance;
+
+/**
+ * Centroids of an iteration of k-means and the figures the accelerated
+ * algorithms use to skip distances: how much each centroid moved since the
+ * previous iteration and the distances between centroids. It also has the
+ * squared norms of the centroids, used to calculate distances by blocks, and
+ * the groups of centroids of the Yinyang's algorithm with how much each group
+ * moved.
+ */
+class Centroids {
+	/** Compacted values of each centroid */
+	final float[][] values;
+	/** Squared norm of each centroid */
+	final double[] norms;
+	/** Distance moved by each centroid (null in the first iteration) */
+	final double[] drift;
+	/** Index of the centroid that moved the most */
+	final int maxDriftCentroid;
+	/** Biggest distance moved by a centroid */
+	final double maxDrift;
+	/** Biggest distance moved by a centroid without the one that moved most */
+	final double secondMaxDrift;
+	/** Distances between centroids (null if not needed) */
+	final double[][] distances;
+	/** Half of the distance of each centroid to the closest other centroid */
+	final double[] halfMinDistance;
+	/** Group of each centroid (null if not needed) */
+	final int[] groups;
+	/** Number of groups */
+	final int nGroups;
+	/** Centroids sorted by group (by index inside each group) */
+	final int[] members;
+	/** Position of the first member of each group, and the number of them */
+	final int[] groupStarts;
+	/** Biggest distance moved by a centroid of each group (null if none) */
+	final double[] groupDrift;
+
+	/**
+	 * Create the centroids of an iteration.
+	 *
+	 * @param values
+	 *            compacted values of each centroid
+	 * @param previous
+	 *            compacted values of each centroid in the previous iteration
+	 *            (null in the first iteration)
+	 * @param withDistances
+	 *            true to calculate the distances between centroids
+	 * @param groups
+	 *            group of each centroid, numbered from 0 without empty groups
+	 *            (null if not needed)
+	 */
+	Centroids(float[][] values, float[][] previous, boolean withDistances,
+			int[] groups) {
+		int k = values.length;
+		this.values = values;
+		norms = new double[k];
+		for (int c = 0; c < k; c++) {
+			for (float value : values[c]) {
+				norms[c] += (double) value * value;
+			}
+		}
+
+		if (previous == null) {
+			drift = null;
+			maxDriftCentroid = -1;
+			maxDrift = 0;
+			secondMaxDrift = 0;
+		} else {
+			drift = new double[k];
+			int max = -1;
+			double first = 0;
+			double second = 0;
+			for (int c = 0; c < k; c++) {
+				drift[c] = Math.sqrt(Distance.squared(values[c], previous[c]));
+				if (max == -1 || drift[c] > first) {
+					second = first;
+					first = drift[c];
+					max = c;
+				} else if (drift[c] > second) {
+					second = drift[c];
+				}
+			}
+			maxDriftCentroid = max;
+			maxDrift = first;
+			secondMaxDrift = second;
+		}
+
+		if (withDistances) {
+			distances = new double[k][k];
+			halfMinDistance = new double[k];
+			for (int c = 0; c < k; c++) {
+				halfMinDistance[c] = Double.MAX_VALUE;
+			}
+			for (int c = 0; c < k; c++) {
+				for (int other = c + 1; other < k; other++) {
+					double d = Math
+							.sqrt(Distance.squared(values[c], values[other]));
+					distances[c][other] = d;
+					distances[other][c] = d;
+					halfMinDistance[c] = Math.min(halfMinDistance[c], d / 2);
+					halfMinDistance[other] = Math.min(halfMinDistance[other],
+							d / 2);
+				}
+			}
+		} else {
+			distances = null;
+			halfMinDistance = null;
+		}
+
+		this.groups = groups;
+		if (groups != null) {
+			int n = 0;
+			for (int group : groups) {
+				n = Math.max(n, group + 1);
+			}
+			nGroups = n;
+			groupStarts = new int[n + 1];
+			for (int group : groups) {
+				groupStarts[group + 1]++;
+			}
+			for (int g = 0; g < n; g++) {
+				groupStarts[g + 1] += groupStarts[g];
+			}
+			members = new int[k];
+			int[] next = Arrays.copyOf(groupStarts, n);
+			for (int c = 0; c < k; c++) {
+				members[next[groups[c]]++] = c;
+			}
+			if (drift != null) {
+				groupDrift = new double[n];
+				for (int c = 0; c < k; c++) {
+					groupDrift[groups[c]] = Math.max(groupDrift[groups[c]],
+							drift[c]);
+				}
+			} else {
+				groupDrift = null;
+			}
+		} else {
+			nGroups = 0;
+			members = null;
+			groupStarts = null;
+			groupDrift = null;
+		}
+	}
+
+	/**
+	 * Biggest distance moved by the centroids other than one.
+	 *
+	 * @param c
+	 *            centroid left out
+	 * @return distance
+	 */
+	double maxDriftWithout(int c) {
+		return c == maxDriftCentroid ? secondMaxDrift : maxDrift;
+	}
+}
@@ -1,8 +1,8 @@
 package clustering;
 
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 
 import data.DataSet;
 import data.Point;
@@ -11,12 +11,19 @@ import data.Point;
  * Collection of data points that are more similar to each other than to those
  * in other clusters. The centroid is the arithmetic mean (average) position of
  * all the points in the cluster.
+ * <p>
+ * The points of all the clusters are kept in a single array of indexes sorted
+ * by cluster, so each cluster is a range of that array.
  */
 public class Cluster {
 	/** Date set of points */
 	DataSet ds;
-	/** Points belonging to the cluster */
-	private Set<Point> points;
+	/** Indexes of the points sorted by cluster (shared by the clusters) */
+	private int[] points;
+	/** Position of the first point of the cluster in the array */
+	private int first;
+	/** Number of points belonging to the cluster */
+	private int nPoints;
 	/** Centroid point of the cluster */
 	private Point centroid;
 	/**
@@ -26,7 +33,7 @@ public class Cluster {
 	private boolean sameCentroid;
 
 	/** List of features that contain missed values in the cluster */
-	private Set<Integer> missedFeatures;
+	private BitSet missedFeatures;
 
 	/**
 	 * Create a new cluster.
@@ -38,10 +45,12 @@ public class Cluster {
 	 */
 	public Cluster(DataSet ds, Point centroid) {
 		this.ds = ds;
-		points = new HashSet<Point>();
+		points = new int[0];
+		first = 0;
+		nPoints = 0;
 		this.centroid = centroid;
 		sameCentroid = false;
-		missedFeatures = new HashSet<Integer>();
+		missedFeatures = new BitSet(ds.nFeatures());
 	}
 
 	/**
@@ -64,42 +73,84 @@ public class Cluster {
 	}
 
 	/**
-	 * Get points of the cluster.
+	 * Get a point of the cluster.
 	 * 
-	 * @return list with the points belonging to the cluster
+	 * @param i
+	 *            position of the point in the cluster (starting from 0)
+	 * @return index of the point in the data set
 	 */
-	public Set<Point> getPoints() {
-		return points;
+	public int getPoint(int i) {
+		return points[first + i];
 	}
 
 	/**
-	 * Add point to the cluster.
+	 * Iterate over the points of the cluster.
 	 * 
-	 * @param p
-	 *            point
+	 * @return iterator of the indexes of the points in the data set
+	 */
+	public PrimitiveIterator.OfInt points() {
+		return new PrimitiveIterator.OfInt() {
+			private int i = first;
+
+			@Override
+			public boolean hasNext() {
+				return i < first + nPoints;
+			}
+
+			@Override
+			public int nextInt() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return points[i++];
+			}
+		};
+	}
+
+	/**
+	 * Set the points of the cluster and register their features with missed
+	 * values.
+	 * 
+	 * @param points
+	 *            indexes of the points sorted by cluster
+	 * @param from
+	 *            position of the first point of the cluster
+	 * @param to
+	 *            position after the last point of the cluster
 	 */
-	public void addPoint(Point p) {
-		this.points.add(p);
+	public void setPoints(int[] points, int from, int to) {
+		cleanPoints();
+		this.points = points;
+		this.first = from;
+		this.nPoints = to - from;
+		for (int i = from; i < to; i++) {
+			addMissedFeatures(points[i]);
+		}
 	}
 
 	/**
-	 * Register a feature as having misssed valures.
+	 * Register the features with misssed valures of a point.
 	 * 
-	 * @param missedFeatures
-	 *            set with the features with missed values
+	 * @param p
+	 *            index of the point in the data set
 	 */
-	public void addMissedFeatures(Set<Integer> missedFeatures) {
-		if (missedFeatures != null) {
-			this.missedFeatures.addAll(missedFeatures);
+	public void addMissedFeatures(int p) {
+		if (ds.hasMissedFeatures(p)) {
+			for (int f = 0; f < ds.nFeatures(); f++) {
+				if (ds.hasMissedValues(f) && !missedFeatures.get(f)
+						&& ds.isMissedFeature(p, f)) {
+					missedFeatures.set(f);
+				}
+			}
 		}
 	}
 
 	/**
 	 * Get features with missed values of the cluster.
 	 * 
-	 * @return set with the features that have missed values
+	 * @return bit set with the features that have missed values
 	 */
-	public Set<Integer> getMissedFeatures() {
+	public BitSet getMissedFeatures() {
 		return this.missedFeatures;
 	}
 
@@ -138,7 +189,7 @@ public class Cluster {
 	 * @return number of points the cluster has.
 	 */
 	public int nPoints() {
-		return points.size();
+		return nPoints;
 	}
 
 	/**
@@ -147,26 +198,23 @@ public class Cluster {
 	 * @return true if the cluster doesn't have any point
 	 */
 	public boolean isEmpty() {
-		return points.isEmpty();
+		return nPoints == 0;
 	}
 
 	/**
 	 * Remove all the points and missed features the cluster has.
 	 */
 	public void cleanPoints() {
-		points.clear();
+		nPoints = 0;
 		missedFeatures.clear();
 	}
 
 	@Override
 	public String toString() {
 		String str = "Centroid: " + this.getCentroid().toString();
-		if (this.points != null && !this.points.isEmpty()) {
-			Iterator<Point> it = this.getPoints().iterator();
-			for (int i = 0; i < 10; i++) { // Show 10 first point
-				if (it.hasNext()) {
-					str += "\n" + it.next().toString();
-				}
+		if (!this.isEmpty()) {
+			for (int i = 0; i < 10 && i < nPoints; i++) { // Show 10 first point
+				str += "\n" + ds.getPoint(getPoint(i)).toString();
 			}
 			str += "\n...";
 		} else {
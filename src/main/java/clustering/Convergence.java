@@ -0,0 +1,148 @@
+package clustering;
+
+/**
+ * Policy that decides when k-means stops iterating. It stops as soon as one of
+ * these criteria holds after an iteration:
+ * <ul>
+ * <li>The maximum number of iterations has been executed, so every run ends in
+ * a predictable time.</li>
+ * <li>No centroid has moved more than the shift tolerance. With the default
+ * tolerance (0) it stops when no centroid moves at all, that is, when the
+ * clusters are stable.</li>
+ * <li>The inertia has decreased less than the relative tolerance since the
+ * previous iteration (disabled by default). It stops long runs whose last
+ * iterations barely improve the clusters.</li>
+ * <li>Less points than the given number have changed of cluster (disabled by
+ * default). Changes are counted while the points are assigned, so it costs
+ * nothing.</li>
+ * </ul>
+ */
+public class Convergence {
+	/** Maximum number of iterations if none is set */
+	public static final int DEFAULT_MAX_ITERATIONS = 1000;
+
+	/** Maximum number of iterations */
+	private int maxIterations = DEFAULT_MAX_ITERATIONS;
+	/** Biggest move of a centroid to consider it stable */
+	private double shiftTolerance;
+	/** Smallest relative decrease of the inertia to keep iterating */
+	private double inertiaTolerance;
+	/** Number of points that must change of cluster to keep iterating */
+	private int minChanged;
+
+	/**
+	 * Set the maximum number of iterations.
+	 *
+	 * @param maxIterations
+	 *            maximum number of iterations (1 at least)
+	 */
+	public void setMaxIterations(int maxIterations) {
+		if (maxIterations < 1) {
+			throw new IllegalArgumentException(
+					"The maximum number of iterations must be at least 1");
+		}
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Set the biggest move of a centroid in an iteration to consider it stable,
+	 * in standardized values. Mini-batches use it too, as the biggest move in
+	 * a batch (with 0 they use 1e-4, as centroids always move a bit).
+	 *
+	 * @param tolerance
+	 *            distance (0 to stop only when no centroid moves)
+	 */
+	public void setShiftTolerance(double tolerance) {
+		if (tolerance < 0) {
+			throw new IllegalArgumentException(
+					"The shift tolerance can't be negative");
+		}
+		this.shiftTolerance = tolerance;
+	}
+
+	/**
+	 * Set the smallest relative decrease of the inertia in an iteration to
+	 * keep iterating.
+	 *
+	 * @param tolerance
+	 *            fraction of the inertia of the previous iteration (for
+	 *            example, 1e-4; 0 to disable this criterion)
+	 */
+	public void setInertiaTolerance(double tolerance) {
+		if (tolerance < 0) {
+			throw new IllegalArgumentException(
+					"The inertia tolerance can't be negative");
+		}
+		this.inertiaTolerance = tolerance;
+	}
+
+	/**
+	 * Set the number of points that must change of cluster in an iteration to
+	 * keep iterating.
+	 *
+	 * @param minChanged
+	 *            number of points (0 to disable this criterion)
+	 */
+	public void setMinChanged(int minChanged) {
+		if (minChanged < 0) {
+			throw new IllegalArgumentException(
+					"The number of points changed can't be negative");
+		}
+		this.minChanged = minChanged;
+	}
+
+	/**
+	 * Get the maximum number of iterations.
+	 *
+	 * @return maximum number of iterations
+	 */
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * Get the biggest move of a centroid in an iteration to consider it
+	 * stable.
+	 *
+	 * @return distance (0 if only centroids that don't move are stable)
+	 */
+	public double getShiftTolerance() {
+		return shiftTolerance;
+	}
+
+	/**
+	 * Check if k-means must stop after an iteration.
+	 *
+	 * @param nIter
+	 *            number of iterations executed
+	 * @param previousInertia
+	 *            inertia of the previous iteration (infinite in the first one)
+	 * @param inertia
+	 *            inertia of the iteration
+	 * @param maxShift
+	 *            biggest move of a centroid in the iteration
+	 * @param nChanged
+	 *            number of points that changed of cluster (all of them in the
+	 *            first iteration)
+	 * @return reason to stop (null to keep iterating)
+	 */
+	String check(int nIter, double previousInertia, double inertia,
+			double maxShift, long nChanged) {
+		if (maxShift <= shiftTolerance) {
+			return "centroids stable";
+		}
+		if (nChanged < minChanged) {
+			return "less than " + minChanged + " points changed";
+		}
+		if (inertiaTolerance > 0 && previousInertia > 0
+				&& !Double.isInfinite(previousInertia)
+				&& (previousInertia - inertia)
+						/ previousInertia < inertiaTolerance) {
+			return "inertia stable";
+		}
+		if (nIter >= maxIterations) {
+			return "maximum of " + maxIterations + " iterations reached";
+		}
+		return null;
+	}
+}
@@ -0,0 +1,167 @@
+package clustering;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import data.DataSet;
+import data.Distance;
+
+/**
+ * Lightweight coreset (Bachem et al.): a small sample of the rows of a data set
+ * with weights, so k-means of the weighted sample costs almost the same as
+ * k-means of the whole data set. Each row is sampled with probability
+ * proportional to q(x) = 1 / (2n) + d(x, mean)^2 / (2 * sum of d(y, mean)^2),
+ * which keeps the rows far from the mean (the ones that shape the clusters)
+ * more often than with uniform sampling, and gets a weight of 1 / probability.
+ * <p>
+ * It is built with two passes over the data set processed in parallel: the
+ * first one calculates the mean and the second one samples the rows
+ * independently (Poisson sampling), so the number of rows is the requested
+ * size on average. The random numbers of each range of rows depend only on the
+ * range, so the coreset doesn't depend on the number of threads.
+ */
+class Coreset {
+	/** Number of rows processed by each task */
+	private static final int ROWS_PER_TASK = 1 << 14;
+
+	/** Compacted values of each row of the coreset */
+	final float[][] values;
+	/** Weight of each row of the coreset */
+	final double[] weights;
+
+	/**
+	 * Create a coreset.
+	 *
+	 * @param values
+	 *            compacted values of each row
+	 * @param weights
+	 *            weight of each row
+	 */
+	private Coreset(float[][] values, double[] weights) {
+		this.values = values;
+		this.weights = weights;
+	}
+
+	/**
+	 * Get the number of rows of the coreset.
+	 *
+	 * @return number of rows
+	 */
+	int size() {
+		return values.length;
+	}
+
+	/**
+	 * Build a coreset of a data set.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param active
+	 *            features used to measure distances
+	 * @param pool
+	 *            pool of threads
+	 * @param size
+	 *            number of rows of the coreset (on average)
+	 * @param seed
+	 *            seed of the random numbers
+	 * @return coreset
+	 */
+	static Coreset build(final DataSet ds, final int[] active,
+			ForkJoinPool pool, final int size, final long seed) {
+		final int n = ds.nPoints();
+
+		// First pass: mean and sum of the squared norms
+		final List<double[]> sums = new ArrayList<double[]>();
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for (int from = 0; from < n; from += ROWS_PER_TASK) {
+			final int start = from;
+			final int end = Math.min(n, from + ROWS_PER_TASK);
+			// Sum of each feature followed by the sum of the squared norms
+			final double[] sum = new double[active.length + 1];
+			sums.add(sum);
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					float[] values = new float[active.length];
+					for (int p = start; p < end; p++) {
+						ds.getValues(p, active, values);
+						for (int i = 0; i < values.length; i++) {
+							double value = values[i];
+							sum[i] += value;
+							sum[active.length] += value * value;
+						}
+					}
+				}
+			});
+		}
+		KMeans.invokeAll(pool, tasks);
+		double[] total = new double[active.length + 1];
+		for (double[] sum : sums) {
+			for (int i = 0; i < total.length; i++) {
+				total[i] += sum[i];
+			}
+		}
+		final float[] mean = new float[active.length];
+		double meanNorm = 0;
+		for (int i = 0; i < active.length; i++) {
+			mean[i] = (float) (total[i] / n);
+			meanNorm += total[i] / n * (total[i] / n);
+		}
+		// Sum of |x - mean|^2 = sum of |x|^2 - n |mean|^2
+		final double scatter = Math.max(0, total[active.length] - n * meanNorm);
+
+		// Second pass: each row with its own probability
+		final List<List<float[]>> sampled = new ArrayList<List<float[]>>();
+		final List<List<Double>> sampledWeights = new ArrayList<List<Double>>();
+		tasks.clear();
+		for (int from = 0; from < n; from += ROWS_PER_TASK) {
+			final int start = from;
+			final int end = Math.min(n, from + ROWS_PER_TASK);
+			final List<float[]> rows = new ArrayList<float[]>();
+			final List<Double> weights = new ArrayList<Double>();
+			sampled.add(rows);
+			sampledWeights.add(weights);
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					Random random = new Random(seed + start);
+					float[] values = new float[active.length];
+					for (int p = start; p < end; p++) {
+						ds.getValues(p, active, values);
+						double q = scatter > 0
+								? 0.5 / n + 0.5
+										* Distance.squared(values, mean)
+										/ scatter
+								: 1.0 / n;
+						double probability = Math.min(1, size * q);
+						if (random.nextDouble() < probability) {
+							rows.add(values.clone());
+							weights.add(1 / probability);
+						}
+					}
+				}
+			});
+		}
+		KMeans.invokeAll(pool, tasks);
+
+		// Rows in the order of the data set
+		List<float[]> rows = new ArrayList<float[]>();
+		List<Double> weights = new ArrayList<Double>();
+		for (int t = 0; t < sampled.size(); t++) {
+			rows.addAll(sampled.get(t));
+			weights.addAll(sampledWeights.get(t));
+		}
+		double[] w = new double[weights.size()];
+		for (int i = 0; i < w.length; i++) {
+			w[i] = weights.get(i);
+		}
+		return new Coreset(rows.toArray(new float[rows.size()][]), w);
+	}
+}
@@ -0,0 +1,114 @@
+package clustering;
+
+import data.DataSet;
+
+/**
+ * Partition that skips distances with the Elkan's algorithm. Each row keeps an
+ * upper bound of the distance to its centroid and a lower bound of the
+ * distance to each centroid. Besides, a centroid is skipped if it is at more
+ * than twice the distance of the row to its own centroid.
+ */
+class ElkanPartition extends Partition {
+	private static final long serialVersionUID = 1L;
+
+	/** Number of clusters */
+	private final int k;
+	/** Upper bound of the distance of each row to its centroid */
+	private final float[] upper;
+	/** Lower bound of the distance of each row to each centroid */
+	private final float[] lower;
+	/** If the bounds have been initialized */
+	private boolean hasBounds;
+
+	/**
+	 * Create a new partition.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param from
+	 *            first row
+	 * @param to
+	 *            row after the last row
+	 * @param active
+	 *            features used to measure distances
+	 * @param labels
+	 *            array where to put the cluster of each row
+	 * @param k
+	 *            number of clusters
+	 */
+	ElkanPartition(DataSet ds, int from, int to, int[] active, int[] labels,
+			int k) {
+		super(ds, from, to, active, labels, k);
+		this.k = k;
+		upper = new float[to - from];
+		lower = new float[(to - from) * k];
+	}
+
+	@Override
+	protected void compute() {
+		super.compute();
+		hasBounds = true;
+	}
+
+	@Override
+	int assign(int row, float[] values) {
+		int i = row - from;
+		int base = i * k;
+		float[][] centroids = this.centroids.values;
+		if (!hasBounds || this.centroids.drift == null) {
+			int closest = 0;
+			double minimumDistance = Double.MAX_VALUE;
+			for (int c = 0; c < k; c++) {
+				double distance = squaredDistance(values, centroids[c]);
+				lower[base + c] = down(Math.sqrt(distance));
+				if (minimumDistance > distance) {
+					minimumDistance = distance;
+					closest = c;
+				}
+			}
+			upper[i] = up(Math.sqrt(minimumDistance));
+			return closest;
+		}
+
+		// Move the bounds with the centroids
+		double[] drift = this.centroids.drift;
+		int closest = labels[row];
+		double u = upper[i] + drift[closest];
+		for (int c = 0; c < k; c++) {
+			lower[base + c] = down(lower[base + c] - drift[c]);
+		}
+		if (u < this.centroids.halfMinDistance[closest]) {
+			upper[i] = up(u);
+			return closest;
+		}
+
+		double[][] distances = this.centroids.distances;
+		double closestDistance = -1; // Squared, -1 while not calculated
+		for (int c = 0; c < k; c++) {
+			if (c == closest || u < lower[base + c]
+					|| u < distances[closest][c] / 2) {
+				continue;
+			}
+			if (closestDistance < 0) {
+				closestDistance = squaredDistance(values,
+						centroids[closest]);
+				u = Math.sqrt(closestDistance);
+				lower[base + closest] = down(u);
+				if (u < lower[base + c] || u < distances[closest][c] / 2) {
+					continue;
+				}
+			}
+			double distance = squaredDistance(values, centroids[c]);
+			lower[base + c] = down(Math.sqrt(distance));
+			// Ties go to the first centroid, like calculating all distances
+			if (distance < closestDistance
+					|| (distance == closestDistance && c < closest)) {
+				closest = c;
+				closestDistance = distance;
+				u = Math.sqrt(distance);
+			}
+		}
+		upper[i] = up(u);
+		return closest;
+	}
+}
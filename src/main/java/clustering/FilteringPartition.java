@@ -0,0 +1,252 @@
+package clustering;
+
+import java.util.Arrays;
+
+import data.DataSet;
+import data.Distance;
+
+/**
+ * Partition that assigns its rows with the filtering algorithm of Kanungo et
+ * al. The rows are kept in a {@link KdTree}, built once and shared by the
+ * partitions of all the runs, and the tree is traversed with a list of
+ * candidate centroids. In each node the
+ * candidates that can't be the closest centroid of any point of its box are
+ * discarded, and when only one is left the whole node is added to its cluster
+ * with the sum of the node. Only leaves with several candidates calculate
+ * distances to their rows, so few distances are calculated when the points
+ * have few features and form clusters.
+ * <p>
+ * A candidate z is discarded when it is at least as far as the best candidate
+ * z* from the corner of the box furthest in the direction z - z*: then no point
+ * of the box is closer to z. Ties in the corner keep the candidate with lower
+ * index, like the other algorithms; only points almost at the same distance of
+ * two centroids can get a different centroid because of rounding.
+ */
+class FilteringPartition extends Partition {
+	private static final long serialVersionUID = 1L;
+
+	/** Tree of the rows (read-only) */
+	private final KdTree tree;
+	/** Candidates of each level of the traversal */
+	private final int[][] candidates;
+	/** Values of a row of a leaf */
+	private final float[] row;
+
+	/**
+	 * Create a new partition.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param from
+	 *            first row
+	 * @param to
+	 *            row after the last row
+	 * @param active
+	 *            features used to measure distances
+	 * @param labels
+	 *            array where to put the cluster of each row
+	 * @param k
+	 *            number of clusters
+	 * @param tree
+	 *            KD-tree of the rows
+	 */
+	FilteringPartition(DataSet ds, int from, int to, int[] active,
+			int[] labels, int k, KdTree tree) {
+		super(ds, from, to, active, labels, k);
+		this.tree = tree;
+		this.candidates = new int[tree.depth + 1][k];
+		this.row = new float[active.length];
+	}
+
+	@Override
+	protected void compute() {
+		first = centroids.drift == null;
+		for (double[] sum : sums) {
+			Arrays.fill(sum, 0);
+		}
+		Arrays.fill(counts, 0);
+		squaredNorms = tree.squaredNorms;
+		nDistances = 0;
+		nChanged = 0;
+
+		int[] all = candidates[0];
+		for (int c = 0; c < all.length; c++) {
+			all[c] = c;
+		}
+		filter(0, 0, all.length);
+	}
+
+	@Override
+	int assign(int row, float[] values) {
+		float[][] centroids = this.centroids.values;
+		int closest = 0;
+		double minimumDistance = Double.MAX_VALUE;
+		for (int c = 0; c < centroids.length; c++) {
+			double distance = squaredDistance(values, centroids[c]);
+			if (minimumDistance > distance) {
+				minimumDistance = distance;
+				closest = c;
+			}
+		}
+		return closest;
+	}
+
+	/**
+	 * Assign the rows of a node with the candidates of its parent.
+	 *
+	 * @param node
+	 *            index of the node
+	 * @param level
+	 *            depth of the node
+	 * @param nCandidates
+	 *            number of candidates (in candidates[level])
+	 */
+	private void filter(int node, int level, int nCandidates) {
+		float[][] centroids = this.centroids.values;
+		int[] current = candidates[level];
+		int base = node * tree.d;
+
+		// Candidate closest to the center of the box
+		int best = current[0];
+		if (nCandidates > 1) {
+			double bestDistance = Double.MAX_VALUE;
+			for (int i = 0; i < nCandidates; i++) {
+				float[] centroid = centroids[current[i]];
+				double distance = 0;
+				for (int f = 0; f < tree.d; f++) {
+					double center = 0.5 * ((double) tree.lower[base + f]
+							+ tree.upper[base + f]);
+					double diff = centroid[f] - center;
+					distance += diff * diff;
+				}
+				if (bestDistance > distance) {
+					bestDistance = distance;
+					best = current[i];
+				}
+			}
+			nDistances += nCandidates;
+
+			// Discard the candidates that are never closer than the best one
+			int kept = 0;
+			for (int i = 0; i < nCandidates; i++) {
+				int c = current[i];
+				if (c == best || !isFarther(c, best, base)) {
+					current[kept++] = c;
+				}
+			}
+			nCandidates = kept;
+		}
+
+		if (nCandidates == 1) {
+			// The whole node belongs to the cluster of the candidate
+			addNode(node, best);
+		} else if (tree.child[node] == -1) {
+			assignLeaf(node, current, nCandidates);
+		} else {
+			int left = tree.child[node];
+			System.arraycopy(current, 0, candidates[level + 1], 0, nCandidates);
+			filter(left, level + 1, nCandidates);
+			System.arraycopy(current, 0, candidates[level + 1], 0, nCandidates);
+			filter(left + 1, level + 1, nCandidates);
+		}
+	}
+
+	/**
+	 * Answer if a candidate is never closer than the best candidate to the
+	 * points of a box: it is at least as far from the corner of the box
+	 * furthest in the direction from the best candidate to it.
+	 *
+	 * @param c
+	 *            candidate
+	 * @param best
+	 *            best candidate
+	 * @param base
+	 *            position of the box of the node
+	 * @return true if the candidate can be discarded
+	 */
+	private boolean isFarther(int c, int best, int base) {
+		float[] z = centroids.values[c];
+		float[] zBest = centroids.values[best];
+		double toCandidate = 0;
+		double toBest = 0;
+		for (int f = 0; f < tree.d; f++) {
+			double corner = z[f] > zBest[f] ? tree.upper[base + f]
+					: tree.lower[base + f];
+			double diff = z[f] - corner;
+			double diffBest = zBest[f] - corner;
+			toCandidate += diff * diff;
+			toBest += diffBest * diffBest;
+		}
+		nDistances += 2;
+		return toCandidate > toBest || (toCandidate == toBest && c > best);
+	}
+
+	/**
+	 * Add all the rows of a node to a cluster.
+	 *
+	 * @param node
+	 *            index of the node
+	 * @param c
+	 *            index of the cluster
+	 */
+	private void addNode(int node, int c) {
+		int start = tree.start[node];
+		int end = tree.end[node];
+		counts[c] += end - start;
+		double[] sum = sums[c];
+		for (int f = 0; f < tree.d; f++) {
+			sum[f] += tree.sums[node * tree.d + f];
+		}
+		for (int i = start; i < end; i++) {
+			setLabel(tree.rows[i], c);
+		}
+	}
+
+	/**
+	 * Assign each row of a leaf to the closest of the candidates.
+	 *
+	 * @param node
+	 *            index of the leaf
+	 * @param current
+	 *            candidates
+	 * @param nCandidates
+	 *            number of candidates
+	 */
+	private void assignLeaf(int node, int[] current, int nCandidates) {
+		float[][] centroids = this.centroids.values;
+		for (int i = tree.start[node]; i < tree.end[node]; i++) {
+			System.arraycopy(tree.values, i * tree.d, row, 0, tree.d);
+			int closest = current[0];
+			double minimumDistance = Double.MAX_VALUE;
+			for (int j = 0; j < nCandidates; j++) {
+				double distance = Distance.squared(row, centroids[current[j]]);
+				if (minimumDistance > distance) {
+					minimumDistance = distance;
+					closest = current[j];
+				}
+			}
+			nDistances += nCandidates;
+			counts[closest]++;
+			double[] sum = sums[closest];
+			for (int f = 0; f < tree.d; f++) {
+				sum[f] += row[f];
+			}
+			setLabel(tree.rows[i], closest);
+		}
+	}
+
+	/**
+	 * Set the cluster of a row, counting it if it changed.
+	 *
+	 * @param r
+	 *            row of the data set
+	 * @param c
+	 *            index of the cluster
+	 */
+	private void setLabel(int r, int c) {
+		if (!first && labels[r] != c) {
+			nChanged++;
+		}
+		labels[r] = c;
+	}
+}
@@ -0,0 +1,108 @@
+package clustering;
+
+import data.DataSet;
+
+/**
+ * Partition that skips distances with the Hamerly's algorithm. Each row keeps
+ * an upper bound of the distance to its centroid and a lower bound of the
+ * distance to any other centroid. Bounds are moved with the centroids in each
+ * iteration, and distances are only calculated when the bounds can't prove
+ * that the row stays in its cluster.
+ */
+class HamerlyPartition extends Partition {
+	private static final long serialVersionUID = 1L;
+
+	/** Upper bound of the distance of each row to its centroid */
+	private final float[] upper;
+	/** Lower bound of the distance of each row to the other centroids */
+	private final float[] lower;
+	/** If the bounds have been initialized */
+	private boolean hasBounds;
+
+	/**
+	 * Create a new partition.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param from
+	 *            first row
+	 * @param to
+	 *            row after the last row
+	 * @param active
+	 *            features used to measure distances
+	 * @param labels
+	 *            array where to put the cluster of each row
+	 * @param k
+	 *            number of clusters
+	 */
+	HamerlyPartition(DataSet ds, int from, int to, int[] active,
+			int[] labels, int k) {
+		super(ds, from, to, active, labels, k);
+		upper = new float[to - from];
+		lower = new float[to - from];
+	}
+
+	@Override
+	protected void compute() {
+		super.compute();
+		hasBounds = true;
+	}
+
+	@Override
+	int assign(int row, float[] values) {
+		int i = row - from;
+		if (!hasBounds || centroids.drift == null) {
+			return assignAll(i, values);
+		}
+
+		// Move the bounds with the centroids
+		int closest = labels[row];
+		double u = upper[i] + centroids.drift[closest];
+		double l = lower[i] - centroids.maxDriftWithout(closest);
+		double z = Math.max(l, centroids.halfMinDistance[closest]);
+		if (u < z) {
+			upper[i] = up(u);
+			lower[i] = down(l);
+			return closest;
+		}
+
+		// Tighten the upper bound
+		u = Math.sqrt(squaredDistance(values, centroids.values[closest]));
+		if (u < z) {
+			upper[i] = up(u);
+			lower[i] = down(l);
+			return closest;
+		}
+		return assignAll(i, values);
+	}
+
+	/**
+	 * Find the closest centroid calculating all the distances and set the
+	 * bounds of the row.
+	 *
+	 * @param i
+	 *            position of the row in the partition
+	 * @param values
+	 *            values of the row
+	 * @return index of the closest centroid (the first one if there are ties)
+	 */
+	private int assignAll(int i, float[] values) {
+		float[][] centroids = this.centroids.values;
+		int closest = 0;
+		double minimumDistance = Double.MAX_VALUE;
+		double secondDistance = Double.MAX_VALUE;
+		for (int c = 0; c < centroids.length; c++) {
+			double distance = squaredDistance(values, centroids[c]);
+			if (minimumDistance > distance) {
+				secondDistance = minimumDistance;
+				minimumDistance = distance;
+				closest = c;
+			} else if (secondDistance > distance) {
+				secondDistance = distance;
+			}
+		}
+		upper[i] = up(Math.sqrt(minimumDistance));
+		lower[i] = down(Math.sqrt(secondDistance));
+		return closest;
+	}
+}
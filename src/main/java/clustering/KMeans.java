@@ -2,24 +2,109 @@ package clustering;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import data.DataSet;
+import data.Distance;
 import data.Point;
 
 /**
  * K-means algorithm. K-means is an iterative algorithm that keeps assigning
  * data points to clusters identified by special points called centroids, until
  * the cluster assignment stabilizes.
+ * <p>
+ * Each iteration assigns the points and sums their values by cluster in a
+ * single pass, splitting the data set in partitions that are processed in
+ * parallel in a fork-join pool.
+ * <p>
+ * Several runs with different seeds can be executed at the same time to keep
+ * the one with the lowest inertia (within-cluster sum of squared distances).
+ * The runs share the data set and iterate in lockstep: the partitions of all
+ * of them are processed together in each iteration.
  */
 public class KMeans {
 	/** Number of clusters to create */
 	int k;
 	/** Data set with the points */
 	DataSet ds;
+	/** Number of threads (0 to use all the processors) */
+	int threads;
+	/** Pool of threads of the caller (null to create one) */
+	ForkJoinPool pool;
+	/** Way of assigning the points to the clusters */
+	Algorithm algorithm = Algorithm.LLOYD;
+	/** Way of choosing the initial centroids */
+	Seeding seeding = Seeding.KMEANS_PLUS_PLUS;
+	/** Seed of the random numbers */
+	long seed = DEFAULT_SEED;
+	/** Number of points of each mini-batch (0 to use all the points) */
+	int batchSize;
+	/** Maximum number of mini-batches */
+	int maxBatches;
+	/** Number of runs with different seeds */
+	int restarts = 1;
+	/** Centroids to start from (null to choose them all) */
+	List<Point> initialCentroids;
+	/** If the clusters are built splitting clusters in two */
+	boolean bisecting;
+	/** Number of rows of the coreset (0 to use all the points) */
+	int coresetSize;
+	/** If identical points are clustered once, weighted by their number */
+	boolean deduplicate;
+	/** When to stop iterating */
+	Convergence convergence = new Convergence();
+	/** KD-trees of the partitions for the filtering algorithm */
+	List<KdTree> trees;
+
+	/** Features used to measure distances (without missed values) */
+	private int[] active;
+	/** Cluster of each point in the last assignment */
+	private int[] labels;
+	/** Partitions of the data set processed in parallel */
+	private List<Partition> partitions;
+	/** Compacted centroids of the previous iteration (null in the first one) */
+	private float[][] previous;
+	/** Group of each centroid (only for the Yinyang's algorithm) */
+	private int[] groups;
+	/** Number of distances calculated */
+	private long nDistances;
+	/** Sum of each active feature of the points of each cluster */
+	private double[][] sums;
+	/** Number of points of each cluster */
+	private int[] counts;
+	/** Clusters of the run */
+	private List<Cluster> clusters;
+	/** Number of iterations executed */
+	private int nIter;
+	/** If the assignment in progress is the first one of the run */
+	private boolean firstAssignment;
+	/** Sum of the squared active values of all the points */
+	private double squaredNorms;
+	/** Sum of the squared distances of the points to their centroids */
+	private double inertia;
+	/** Inertia of the previous assignment (infinite before the second one) */
+	private double previousInertia;
+	/** Number of points whose cluster changed in the last assignment */
+	private int nChanged;
+	/** Biggest move of a centroid in the last iteration */
+	private double maxShift;
+	/** Why the iterations stopped (null while iterating) */
+	private String stopReason;
+
+	/** Number of rows of each partition */
+	private static final int ROWS_PER_PARTITION = 1 << 14;
+	/** Seed of the random numbers if none is set */
+	private static final long DEFAULT_SEED = 1;
+	/** Difference between the seeds of consecutive runs */
+	private static final long RESTART_SEED_STEP = 0x9E3779B97F4A7C15L;
 
 	/** Logger */
 	private static final Logger logger = LoggerFactory.getLogger(KMeans.class);
@@ -34,6 +119,225 @@ public class KMeans {
 		this.ds = ds;
 	}
 
+	/**
+	 * Set the number of threads used to assign the points.
+	 * 
+	 * @param threads
+	 *            number of threads (0 to use all the processors)
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Use the pool of threads of the caller instead of creating one, so the
+	 * caller and k-means don't compete with two sets of threads. The number
+	 * of threads is ignored and the pool isn't shut down.
+	 * 
+	 * @param pool
+	 *            pool of threads (null to create one)
+	 */
+	void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Set the way of assigning the points to the clusters. All the algorithms
+	 * build the same clusters, but the accelerated ones calculate less
+	 * distances.
+	 * 
+	 * @param algorithm
+	 *            algorithm
+	 */
+	public void setAlgorithm(Algorithm algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	/**
+	 * Set the way of choosing the initial centroids.
+	 * 
+	 * @param seeding
+	 *            way of choosing the centroids
+	 */
+	public void setSeeding(Seeding seeding) {
+		this.seeding = seeding;
+	}
+
+	/**
+	 * Set the seed of the random numbers, so runs can be repeated.
+	 * 
+	 * @param seed
+	 *            seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Set when the iterations stop (see {@link Convergence}). By default, they
+	 * stop when no centroid moves or after
+	 * {@link Convergence#DEFAULT_MAX_ITERATIONS} iterations. It is also used
+	 * by the k-means of a coreset or of the unique points, but not by the
+	 * 2-means splits of bisecting k-means.
+	 * 
+	 * @param convergence
+	 *            convergence policy
+	 */
+	public void setConvergence(Convergence convergence) {
+		this.convergence = convergence;
+	}
+
+	/**
+	 * Use mini-batch k-means: each iteration moves the centroids with a small
+	 * random batch of points instead of all of them, which is much faster for
+	 * big data sets in exchange for slightly worse clusters. At the end, all
+	 * the points are assigned to their closest centroid.
+	 * <p>
+	 * The batches stop when no centroid moves more than the shift tolerance of
+	 * the convergence policy in a batch (1e-4 if it isn't set) or after the
+	 * maximum number of batches. The other criteria of the policy, including
+	 * its maximum number of iterations, don't apply to batches.
+	 * 
+	 * @param batchSize
+	 *            number of points of each batch (0 to use all the points in
+	 *            each iteration)
+	 * @param maxBatches
+	 *            maximum number of batches (it stops before if the centroids
+	 *            are stable)
+	 */
+	public void setMiniBatch(int batchSize, int maxBatches) {
+		this.batchSize = batchSize;
+		this.maxBatches = maxBatches;
+	}
+
+	/**
+	 * Start from some centroids, usually the ones of a previous execution
+	 * with less clusters (warm start). The centroids that are missing to get
+	 * k are chosen with k-means++, whatever the seeding.
+	 * 
+	 * @param centroids
+	 *            standardized centroids (null to choose them all)
+	 */
+	public void setInitialCentroids(List<Point> centroids) {
+		this.initialCentroids = centroids;
+	}
+
+	/**
+	 * Use bisecting k-means: starting from a single cluster, the clusters with
+	 * the highest sum of squared distances to their centroid are split in two
+	 * with 2-means until there are k clusters. It is much faster when k is
+	 * big, no cluster is left empty and the centroids are not chosen at the
+	 * beginning (seeding and initial centroids are ignored), but the clusters
+	 * are usually a bit worse than with the usual k-means. There are less than
+	 * k clusters only if there are less than k different points. Each split
+	 * runs 2-means until no point changes of side or for 20 iterations at
+	 * most, whatever the convergence policy.
+	 * 
+	 * @param bisecting
+	 *            true to use bisecting k-means
+	 */
+	public void setBisecting(boolean bisecting) {
+		this.bisecting = bisecting;
+	}
+
+	/**
+	 * Run k-means on a coreset: a weighted sample of the points, built with
+	 * two passes over the data set, that keeps the points far from the mean
+	 * more often. The iterations only use the coreset, so their time doesn't
+	 * depend on the number of points, and at the end all the points are
+	 * assigned to their closest centroid. The initial centroids are chosen
+	 * with k-means++ on the coreset (seeding and initial centroids are
+	 * ignored). The clusters are a bit worse than with all the points, less
+	 * the bigger the coreset is (some thousands of points per cluster give
+	 * almost the same clusters).
+	 * 
+	 * @param size
+	 *            number of points of the coreset, on average (0 to use all
+	 *            the points)
+	 */
+	public void setCoreset(int size) {
+		this.coresetSize = size;
+	}
+
+	/**
+	 * Cluster identical points (same values in the features without missed
+	 * values, the ones used to measure distances) only once: k-means runs on
+	 * the unique points weighted by the number of times they appear, and each
+	 * point gets the cluster of its unique point, so the clusters have all the
+	 * points as usual. It is much faster when there are many duplicated
+	 * points. The initial centroids are chosen with k-means++ weighted by the
+	 * number of times (seeding and initial centroids are ignored), and each
+	 * iteration compares the unique points with every centroid using all of
+	 * them (the algorithm and mini-batches are ignored). It is ignored with
+	 * bisecting k-means or a coreset.
+	 * 
+	 * @param deduplicate
+	 *            true to cluster identical points only once
+	 */
+	public void setDeduplicate(boolean deduplicate) {
+		this.deduplicate = deduplicate;
+	}
+
+	/**
+	 * Execute several runs with different seeds and keep the one with the
+	 * lowest inertia. Every run iterates until it converges, so the result is
+	 * never worse than the first run alone (the one with the seed set), and
+	 * the runs iterate in lockstep, so the result doesn't depend on the number
+	 * of threads. The grid seeding chooses the same centroids in every run, so
+	 * it needs a random seeding.
+	 * 
+	 * @param restarts
+	 *            number of runs (1 to execute a single run)
+	 */
+	public void setRestarts(int restarts) {
+		if (restarts < 1) {
+			throw new IllegalArgumentException(
+					"The number of restarts must be at least 1");
+		}
+		this.restarts = restarts;
+	}
+
+	/**
+	 * Get the inertia of the last execution: the sum of the squared distances
+	 * of the points to the centroid of their cluster, in standardized values.
+	 * 
+	 * @return inertia
+	 */
+	public double getInertia() {
+		return inertia;
+	}
+
+	/**
+	 * Get the cluster of each point in the last execution, in the order of the
+	 * clusters returned.
+	 * 
+	 * @return index of the cluster of each point of the data set
+	 */
+	int[] getLabels() {
+		return labels;
+	}
+
+	/**
+	 * Share the KD-trees of the partitions with another k-means of the same
+	 * data set, so the filtering algorithm doesn't build them again. They are
+	 * read-only, so they can be used by several executions.
+	 * 
+	 * @param trees
+	 *            trees built by another k-means (null to build them)
+	 */
+	void setTrees(List<KdTree> trees) {
+		this.trees = trees;
+	}
+
+	/**
+	 * Get the KD-trees of the partitions built for the filtering algorithm.
+	 * 
+	 * @return trees (null if they weren't needed)
+	 */
+	List<KdTree> getTrees() {
+		return trees;
+	}
+
 	/**
 	 * Execute k-means algorithm with the data set settled.
 	 * 
@@ -45,51 +349,507 @@ public class KMeans {
 		this.k = k;
 		System.out.println("> Running " + k + "-means...");
 
-		List<Cluster> clusters = chooseCentroids();
+		ForkJoinPool pool = this.pool != null ? this.pool
+				: threads > 0 ? new ForkJoinPool(threads)
+						: ForkJoinPool.commonPool();
+		KMeans best;
+		try {
+			// The trees only depend on the data set, so they are built once
+			// and shared by all the runs
+			if (algorithm == Algorithm.FILTERING && trees == null
+					&& !bisecting && (coresetSize > 0 || !deduplicate)) {
+				trees = buildTrees(pool);
+			}
 
-		int nIter = 0; // Number of iterations
-		while (!isFinished(clusters)) {
-			logger.trace("Not finish");
-			nIter++;
-			cleanClusters(clusters);
-			assignPoints(clusters);
-			recalculateCentroids(clusters);
+			// This object is the first run
+			List<KMeans> runs = new ArrayList<KMeans>();
+			runs.add(this);
+			for (int r = 1; r < restarts; r++) {
+				KMeans run = new KMeans(ds);
+				run.k = k;
+				run.algorithm = algorithm;
+				run.seeding = seeding;
+				run.seed = seed + r * RESTART_SEED_STEP;
+				run.batchSize = batchSize;
+				run.maxBatches = maxBatches;
+				run.initialCentroids = initialCentroids;
+				run.bisecting = bisecting;
+				run.coresetSize = coresetSize;
+				run.deduplicate = deduplicate;
+				run.convergence = convergence;
+				run.trees = trees;
+				runs.add(run);
+			}
+			if (bisecting) {
+				best = runBisections(pool, runs);
+			} else if (coresetSize > 0) {
+				best = runCoresets(pool, runs);
+			} else if (deduplicate) {
+				best = runDeduplicated(pool, runs);
+			} else {
+				for (KMeans run : runs) {
+					run.createPartitions();
+					run.clusters = run.chooseCentroids(pool);
+				}
+				best = batchSize > 0 ? runMiniBatches(pool, runs)
+						: runLockstep(pool, runs);
+			}
+
+			// Show figures
+			long nTotalDistances = 0;
+			for (KMeans run : runs) {
+				nTotalDistances += run.nDistances;
+			}
+			if (bisecting) {
+				System.out.println("      " + best.nIter
+						+ " rounds of splits executed");
+			} else if (batchSize > 0) {
+				System.out.println("      " + best.nIter + " mini-batches of "
+						+ batchSize + " points executed");
+			} else {
+				System.out.println("      " + best.nIter
+						+ " iterations executed (" + best.stopReason + ")");
+			}
+			System.out.println(
+					"      " + nTotalDistances + " distances calculated");
+		} finally {
+			if (pool != this.pool && pool != ForkJoinPool.commonPool()) {
+				pool.shutdown();
+			}
 		}
+		inertia = best.inertia;
+		labels = best.labels;
+		List<Cluster> clusters = best.clusters;
 
-		// Show figures
-		System.out.println("      " + nIter + " iterations executed");
+		// Points of each cluster in the last assignment, sorted by cluster
+		// (counting sort) so each cluster gets a range of the same array
+		int[] starts = new int[clusters.size() + 1];
+		for (int p = 0; p < labels.length; p++) {
+			starts[labels[p] + 1]++;
+		}
+		for (int c = 0; c < clusters.size(); c++) {
+			starts[c + 1] += starts[c];
+		}
+		int[] points = new int[labels.length];
+		int[] next = Arrays.copyOf(starts, clusters.size());
+		for (int p = 0; p < labels.length; p++) {
+			points[next[labels[p]]++] = p;
+		}
+		for (int c = 0; c < clusters.size(); c++) {
+			clusters.get(c).setPoints(points, starts[c], starts[c + 1]);
+		}
+		logger.debug("Clusters filled");
 		for (int i = 0; i < clusters.size(); i++) {
 			System.out.println("      ·Cluster " + (i + 1) + ": "
-					+ clusters.get(i).getPoints().size() + " points");
+					+ clusters.get(i).nPoints() + " points");
 		}
 
 		return clusters;
 	}
 
+	/**
+	 * Iterate all the runs in lockstep until all of them finish. In each
+	 * iteration the partitions of all the runs still going are processed in
+	 * parallel. No run is stopped early: inertia keeps going down until a run
+	 * converges, so a run worse than a finished one in some iteration can
+	 * still end up better.
+	 * 
+	 * @param pool
+	 *            pool of threads
+	 * @param runs
+	 *            runs with the initial centroids
+	 * @return run with the lowest inertia (the first one if there are ties)
+	 */
+	private KMeans runLockstep(ForkJoinPool pool, List<KMeans> runs) {
+		List<KMeans> going = new ArrayList<KMeans>();
+		for (KMeans run : runs) {
+			if (!run.clusters.isEmpty()) { // Empty only with k = 0
+				going.add(run);
+			}
+		}
+		while (!going.isEmpty()) {
+			logger.trace("Not finish");
+			List<Partition> all = new ArrayList<Partition>();
+			for (KMeans run : going) {
+				run.nIter++;
+				run.prepareAssignment();
+				all.addAll(run.partitions);
+			}
+			invokeAll(pool, all);
+			for (KMeans run : going) {
+				run.reduceAssignment();
+				run.recalculateCentroids(run.clusters);
+			}
+			for (Iterator<KMeans> i = going.iterator(); i.hasNext();) {
+				KMeans run = i.next();
+				if (run.isConverged()) {
+					i.remove();
+					run.partitions = null; // Free the bounds
+				}
+			}
+		}
+
+		// In the order of the runs, so ties keep the first one
+		KMeans best = null;
+		for (KMeans run : runs) {
+			if (best == null || run.inertia < best.inertia) {
+				best = run;
+			}
+		}
+		showRestarts(runs, best);
+		return best;
+	}
+
+	/**
+	 * Execute the mini-batch k-means of each run, one after another.
+	 * 
+	 * @param pool
+	 *            pool of threads
+	 * @param runs
+	 *            runs with the initial centroids
+	 * @return run with the lowest inertia (the first one if there are ties)
+	 */
+	private KMeans runMiniBatches(ForkJoinPool pool, List<KMeans> runs) {
+		KMeans best = null;
+		for (KMeans run : runs) {
+			run.runMiniBatch(pool);
+			if (best == null || run.inertia < best.inertia) {
+				best = run;
+			}
+		}
+		showRestarts(runs, best);
+		return best;
+	}
+
+	/**
+	 * Execute the bisecting k-means of each run, one after another.
+	 * 
+	 * @param pool
+	 *            pool of threads
+	 * @param runs
+	 *            runs to execute
+	 * @return run with the lowest inertia (the first one if there are ties)
+	 */
+	private KMeans runBisections(ForkJoinPool pool, List<KMeans> runs) {
+		KMeans best = null;
+		for (KMeans run : runs) {
+			run.runBisecting(pool);
+			if (best == null || run.inertia < best.inertia) {
+				best = run;
+			}
+		}
+		showRestarts(runs, best);
+		return best;
+	}
+
+	/**
+	 * Build the clusters splitting them in two.
+	 * 
+	 * @param pool
+	 *            pool of threads
+	 */
+	private void runBisecting(ForkJoinPool pool) {
+		active = ds.getCompleteFeatures();
+		labels = new int[ds.nPoints()];
+		Bisecting bisection = new Bisecting(ds, active, pool, seed);
+		float[][] centroids = bisection.run(k, labels);
+		nIter = bisection.nRounds;
+		nDistances = bisection.nDistances;
+		inertia = bisection.inertia;
+		clusters = new ArrayList<Cluster>();
+		for (float[] centroid : centroids) {
+			clusters.add(new Cluster(ds, new Point(
+					Distance.expand(centroid, active, ds.nFeatures()))));
+		}
+	}
+
+	/**
+	 * Build a coreset and execute the k-means of each run on it, one after
+	 * another.
+	 * 
+	 * @param pool
+	 *            pool of threads
+	 * @param runs
+	 *            runs to execute
+	 * @return run with the lowest inertia (the first one if there are ties)
+	 */
+	private KMeans runCoresets(ForkJoinPool pool, List<KMeans> runs) {
+		Coreset coreset = Coreset.build(ds, ds.getCompleteFeatures(), pool,
+				coresetSize, seed);
+		System.out.println(
+				"      Coreset of " + coreset.size() + " points built");
+		KMeans best = null;
+		for (KMeans run : runs) {
+			run.runCoreset(pool, coreset);
+			if (best == null || run.inertia < best.inertia) {
+				best = run;
+			}
+		}
+		showRestarts(runs, best);
+		return best;
+	}
+
+	/**
+	 * Move the centroids with the weighted k-means of a coreset and assign all
+	 * the points to the final centroids.
+	 * 
+	 * @param pool
+	 *            pool of threads
+	 * @param coreset
+	 *            coreset of the data set
+	 */
+	private void runCoreset(ForkJoinPool pool, Coreset coreset) {
+		createPartitions();
+		float[][] centroids = new float[k][active.length];
+		if (coreset.size() > 0) {
+			Seeder seeder = new Seeder(ds, active, pool, seed);
+			List<float[]> chosen = seeder.weightedKMeansPlusPlus(
+					Arrays.asList(coreset.values), coreset.weights, k);
+			for (int c = 0; c < k; c++) {
+				centroids[c] = chosen.get(c).clone();
+			}
+		}
+		WeightedKMeans weighted = new WeightedKMeans(coreset.values,
+				coreset.weights, pool, convergence);
+		nIter = weighted.run(centroids);
+		stopReason = weighted.stopReason;
+		nDistances += weighted.nDistances;
+		clusters = new ArrayList<Cluster>();
+		for (float[] centroid : centroids) {
+			clusters.add(new Cluster(ds, new Point(
+					Distance.expand(centroid, active, ds.nFeatures()))));
+		}
+
+		// Full assignment, so every point gets its cluster
+		prepareAssignment();
+		invokeAll(pool, partitions);
+		reduceAssignment();
+	}
+
+	/**
+	 * Find the unique points and execute the k-means of each run on them, one
+	 * after another.
+	 * 
+	 * @param pool
+	 *            pool of threads
+	 * @param runs
+	 *            runs to execute
+	 * @return run with the lowest inertia (the first one if there are ties)
+	 */
+	private KMeans runDeduplicated(ForkJoinPool pool, List<KMeans> runs) {
+		UniqueRows unique = new UniqueRows(ds, ds.getCompleteFeatures(), pool);
+		System.out.println("      " + unique.size() + " unique points of "
+				+ ds.nPoints());
+		KMeans best = null;
+		for (KMeans run : runs) {
+			run.runUnique(pool, unique);
+			if (best == null || run.inertia < best.inertia) {
+				best = run;
+			}
+		}
+		showRestarts(runs, best);
+		return best;
+	}
+
+	/**
+	 * Execute the weighted k-means of the unique points and give each point
+	 * the cluster of its unique point.
+	 * 
+	 * @param pool
+	 *            pool of threads
+	 * @param unique
+	 *            unique points of the data set
+	 */
+	private void runUnique(ForkJoinPool pool, UniqueRows unique) {
+		active = ds.getCompleteFeatures();
+		float[][] centroids = new float[k][active.length];
+		if (unique.size() > 0) {
+			Seeder seeder = new Seeder(ds, active, pool, seed);
+			List<float[]> chosen = seeder.weightedKMeansPlusPlus(
+					Arrays.asList(unique.values), unique.weights, k);
+			for (int c = 0; c < k; c++) {
+				centroids[c] = chosen.get(c).clone();
+			}
+		}
+		WeightedKMeans weighted = new WeightedKMeans(unique.values,
+				unique.weights, pool, convergence);
+		nIter = weighted.run(centroids);
+		stopReason = weighted.stopReason;
+		nDistances = weighted.nDistances;
+		inertia = weighted.inertia;
+		labels = new int[ds.nPoints()];
+		for (int p = 0; p < labels.length; p++) {
+			labels[p] = weighted.labels[unique.unique[p]];
+		}
+		clusters = new ArrayList<Cluster>();
+		for (float[] centroid : centroids) {
+			clusters.add(new Cluster(ds, new Point(
+					Distance.expand(centroid, active, ds.nFeatures()))));
+		}
+	}
+
+	/**
+	 * Show the figures of the runs if there are several.
+	 * 
+	 * @param runs
+	 *            runs
+	 * @param best
+	 *            run with the lowest inertia
+	 */
+	private void showRestarts(List<KMeans> runs, KMeans best) {
+		if (runs.size() > 1) {
+			System.out.println("      " + runs.size() + " runs executed, run "
+					+ (runs.indexOf(best) + 1) + " kept with inertia "
+					+ best.inertia);
+		}
+	}
+
+	/**
+	 * Move the centroids with mini-batches and assign all the points to the
+	 * final centroids.
+	 * 
+	 * @param pool
+	 *            pool of threads
+	 */
+	private void runMiniBatch(ForkJoinPool pool) {
+		float[][] centroids = new float[clusters.size()][];
+		for (int c = 0; c < centroids.length; c++) {
+			centroids[c] = Distance
+					.compact(clusters.get(c).getCentroid().getValues(), active);
+		}
+		MiniBatch miniBatch = new MiniBatch(ds, active, pool, seed + 1);
+		double tolerance = convergence.getShiftTolerance() > 0
+				? convergence.getShiftTolerance() : MiniBatch.DEFAULT_TOLERANCE;
+		nIter = miniBatch.run(centroids, batchSize, maxBatches, tolerance);
+		nDistances += miniBatch.nDistances;
+		for (int c = 0; c < centroids.length; c++) {
+			clusters.get(c).setCentroid(new Point(
+					Distance.expand(centroids[c], active, ds.nFeatures())));
+		}
+
+		// Full assignment, so every point gets its cluster
+		prepareAssignment();
+		invokeAll(pool, partitions);
+		reduceAssignment();
+	}
+
+	/**
+	 * Split the data set in partitions of rows to process them in parallel.
+	 * The size of the partitions doesn't depend on the number of threads, so
+	 * neither do the results.
+	 */
+	private void createPartitions() {
+		active = ds.getCompleteFeatures();
+
+		labels = new int[ds.nPoints()];
+		previous = null;
+		groups = null;
+		nDistances = 0;
+		nIter = 0;
+		partitions = new ArrayList<Partition>();
+		for (int from = 0; from < ds.nPoints(); from += ROWS_PER_PARTITION) {
+			partitions.add(Partition.create(algorithm, ds, from,
+					Math.min(ds.nPoints(), from + ROWS_PER_PARTITION), active,
+					labels, k,
+					trees != null ? trees.get(partitions.size()) : null));
+		}
+	}
+
+	/**
+	 * Build in parallel the KD-tree of each partition of the data set.
+	 * 
+	 * @param pool
+	 *            pool of threads
+	 * @return tree of each partition
+	 */
+	private List<KdTree> buildTrees(ForkJoinPool pool) {
+		final int[] active = ds.getCompleteFeatures();
+		int nPartitions = (ds.nPoints() + ROWS_PER_PARTITION - 1)
+				/ ROWS_PER_PARTITION;
+		final KdTree[] trees = new KdTree[nPartitions];
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for (int t = 0; t < nPartitions; t++) {
+			final int tree = t;
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					int from = tree * ROWS_PER_PARTITION;
+					trees[tree] = new KdTree(ds, from,
+							Math.min(ds.nPoints(), from + ROWS_PER_PARTITION),
+							active);
+				}
+			});
+		}
+		invokeAll(pool, tasks);
+		return Arrays.asList(trees);
+	}
+
+	/**
+	 * Choose centroids for the k clusters.
+	 * 
+	 * @param pool
+	 *            pool of threads
+	 * @return k clusters each one with the centroid setted
+	 */
+	private List<Cluster> chooseCentroids(ForkJoinPool pool) {
+		if (seeding == Seeding.GRID && initialCentroids == null) {
+			return chooseGridCentroids();
+		}
+
+		Seeder seeder = new Seeder(ds, active, pool, seed);
+		List<float[]> values;
+		if (initialCentroids != null) {
+			List<float[]> initial = new ArrayList<float[]>();
+			for (Point centroid : initialCentroids) {
+				initial.add(centroid.getValues());
+			}
+			values = seeder.kMeansPlusPlus(initial, k);
+		} else if (seeding == Seeding.KMEANS_PARALLEL) {
+			values = seeder.kMeansParallel(k);
+		} else {
+			values = seeder.kMeansPlusPlus(k);
+		}
+		List<Cluster> centroids = new ArrayList<Cluster>();
+		for (int i = 0; i < k; i++) {
+			// An empty data set has no points to choose
+			float[] features = i < values.size() ? values.get(i)
+					: new float[ds.nFeatures()];
+			centroids.add(new Cluster(ds, new Point(features)));
+		}
+
+		logger.debug("Initial centroids:");
+		for (Cluster c : centroids) {
+			logger.debug(c.toString());
+		}
+
+		return centroids;
+	}
+
 	/**
 	 * Choose centroids for the k clustes uniformly distributed between the min.
 	 * and max. value of each feature.
 	 * 
 	 * @return k clusters each one with the centroid setted
 	 */
-	private List<Cluster> chooseCentroids() {
+	private List<Cluster> chooseGridCentroids() {
 		List<Cluster> centroids = new ArrayList<Cluster>();
 
 		float[] highest = new float[ds.nFeatures()];
 		float[] lowests = new float[ds.nFeatures()];
 
-		// Get the max. and min. value of each feature
-		for (int i = 0; i < ds.nFeatures(); i++) {
-			if (!ds.hasMissedValues(i)) {
-				float min = Float.POSITIVE_INFINITY;
-				float max = Float.NEGATIVE_INFINITY;
-				for (Point p : ds.getPoints()) {
-					float feature = p.getValue(i);
-					min = min > feature ? feature : min;
-					max = max < feature ? feature : max;
-				}
-				highest[i] = max;
-				lowests[i] = min;
+		// Get the max. and min. value of each feature in a single scan of the
+		// data set
+		Arrays.fill(highest, Float.NEGATIVE_INFINITY);
+		Arrays.fill(lowests, Float.POSITIVE_INFINITY);
+		float[] values = new float[ds.nFeatures()];
+		for (int p = 0; p < ds.nPoints(); p++) {
+			ds.getValues(p, values);
+			for (int i = 0; i < ds.nFeatures(); i++) {
+				float feature = values[i];
+				lowests[i] = lowests[i] > feature ? feature : lowests[i];
+				highest[i] = highest[i] < feature ? feature : highest[i];
 			}
 		}
 
@@ -120,109 +880,160 @@ public class KMeans {
 	}
 
 	/**
-	 * Check if all the clusters are complete.
+	 * Check if the run must stop after an iteration, with the convergence
+	 * policy.
 	 * 
-	 * @param clusters
-	 * @return true if all are complete, otherwise false
+	 * @return true if it must stop
 	 */
-	private boolean isFinished(List<Cluster> clusters) {
-		for (Cluster cluster : clusters) {
-			if (!cluster.isFinished()) {
-				return false;
-			}
+	private boolean isConverged() {
+		stopReason = convergence.check(nIter, previousInertia, inertia,
+				maxShift, nChanged);
+		if (stopReason != null) {
+			logger.debug("Run stopped after " + nIter + " iterations: "
+					+ stopReason);
 		}
-		return true;
+		return stopReason != null;
 	}
 
 	/**
-	 * Remove all the points each cluster had.
-	 * 
-	 * @param clusters
+	 * Prepare the partitions to assign each point of the data set to its
+	 * closest cluster with the current centroids.
 	 */
-	private void cleanClusters(List<Cluster> clusters) {
-		for (Cluster c : clusters) {
-			c.cleanPoints();
+	private void prepareAssignment() {
+		float[][] values = new float[clusters.size()][];
+		for (int c = 0; c < values.length; c++) {
+			values[c] = Distance
+					.compact(clusters.get(c).getCentroid().getValues(), active);
+		}
+		// Groups are chosen with the initial centroids and kept in the run
+		if (previous == null && algorithm == Algorithm.YINYANG) {
+			groups = YinyangPartition.groupCentroids(values);
+		}
+		Centroids centroids = new Centroids(values, previous,
+				algorithm == Algorithm.HAMERLY || algorithm == Algorithm.ELKAN,
+				groups);
+		firstAssignment = previous == null;
+		previous = values;
+		for (Partition partition : partitions) {
+			partition.prepare(centroids);
 		}
-		logger.debug("Clusters cleaned");
 	}
 
 	/**
-	 * Assign each point of the data set to its closest cluster.
-	 * 
-	 * @param clusters
+	 * Reduce the sums of the partitions in order once they have assigned the
+	 * points, and calculate the inertia of the assignment. The sums of the
+	 * partitions are kept between iterations, so they are copied.
 	 */
-	private void assignPoints(List<Cluster> clusters) {
-		// Get the closest cluster for each point
-		for (Point p : ds.getPoints()) {
-			Cluster closest = clusters.get(0); // Choose an initial cluster
-			Double minimumDistance = Double.MAX_VALUE;
-			for (Cluster c : clusters) {
-				// Squared Euclidian distance between the point and the centroid
-				Double distance = p.squaredEuclidianDistance(ds,
-						c.getCentroid());
-				if (minimumDistance > distance) {
-					minimumDistance = distance;
-					closest = c;
+	private void reduceAssignment() {
+		sums = new double[clusters.size()][active.length];
+		counts = new int[clusters.size()];
+		long nIterationDistances = 0;
+		nChanged = 0;
+		if (firstAssignment) {
+			squaredNorms = 0;
+		}
+		for (Partition partition : partitions) {
+			nIterationDistances += partition.nDistances;
+			nChanged += partition.nChanged;
+			if (firstAssignment) {
+				squaredNorms += partition.squaredNorms;
+			}
+			for (int c = 0; c < counts.length; c++) {
+				counts[c] += partition.counts[c];
+				for (int i = 0; i < active.length; i++) {
+					sums[c][i] += partition.sums[c][i];
 				}
 			}
-			logger.debug(
-					p.toString() + " --> " + closest.getCentroid().toString());
-			// Add point to the closest cluster
-			closest.addPoint(p);
-			// Register in the cluster if the point has features with missed
-			// values
-			closest.addMissedFeatures(p.getMissedFeatures());
 		}
 
-		logger.debug("Points assigned");
+		// Sum of |x - c|^2 = |x|^2 - 2 x·c + |c|^2 over the points of each
+		// cluster, with the sums of the cluster
+		double total = squaredNorms;
+		for (int c = 0; c < counts.length; c++) {
+			float[] centroid = previous[c];
+			double dot = 0;
+			double norm = 0;
+			for (int i = 0; i < active.length; i++) {
+				double value = centroid[i];
+				dot += value * sums[c][i];
+				norm += value * value;
+			}
+			total += counts[c] * norm - 2 * dot;
+		}
+		previousInertia = firstAssignment ? Double.POSITIVE_INFINITY : inertia;
+		inertia = Math.max(0, total);
+		if (firstAssignment) {
+			// Every point gets its first cluster
+			nChanged = labels.length;
+		}
+
+		nDistances += nIterationDistances;
+		logger.debug("Points assigned with " + nIterationDistances
+				+ " distances, " + nChanged + " changed, inertia " + inertia);
 		for (int i = 0; i < clusters.size(); i++) {
-			logger.debug("Cluster " + (i + 1) + ": "
-					+ clusters.get(i).getPoints().size() + " points.");
+			logger.debug("Cluster " + (i + 1) + ": " + counts[i] + " points.");
 		}
 	}
 
+	/**
+	 * Run tasks in parallel in a pool and wait for all of them.
+	 * 
+	 * @param pool
+	 *            pool of threads
+	 * @param tasks
+	 *            tasks
+	 */
+	static void invokeAll(ForkJoinPool pool,
+			final Collection<? extends ForkJoinTask<?>> tasks) {
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				ForkJoinTask.invokeAll(tasks);
+			}
+		});
+	}
+
 	/**
 	 * Recalculate the centroids of each cluster taking as a new centroid a
-	 * point with the mean value of each feature.
+	 * point with the mean value of each feature, and measure how much they
+	 * moved.
 	 * 
 	 * @param clusters
 	 */
 	private void recalculateCentroids(List<Cluster> clusters) {
 		logger.debug("New centroids:");
 
-		for (Cluster c : clusters) {
+		maxShift = 0;
+		for (int c = 0; c < clusters.size(); c++) {
+			Cluster cluster = clusters.get(c);
 			// If the cluster has no points, the centroid is the same
-			if (c.isEmpty()) {
-				c.setFinished(true);
+			if (counts[c] == 0) {
+				cluster.setFinished(true);
 				logger.debug("The same (empty)");
 				continue;
 			}
 
-			// Calculate mean value of each feature
-			float[] meanFeatures = new float[ds.nFeatures()];
-			Arrays.fill(meanFeatures, 0F);
-			for (Point p : c.getPoints()) {
-				for (int f = 0; f < ds.nFeatures(); f++) {
-					if (!ds.hasMissedValues(f)) {
-						meanFeatures[f] += p.getValue(f);
-					}
-				}
-			}
-			for (int f = 0; f < ds.nFeatures(); f++) {
-				if (!ds.hasMissedValues(f)) {
-					meanFeatures[f] /= c.nPoints();
-				}
+			// Mean value of each feature (features with missed values are 0)
+			float[] mean = new float[active.length];
+			for (int i = 0; i < active.length; i++) {
+				mean[i] = (float) (sums[c][i] / counts[c]);
 			}
+			maxShift = Math.max(maxShift,
+					Math.sqrt(Distance.squared(mean, previous[c])));
 
-			Point newCentroid = new Point(meanFeatures);
+			Point newCentroid = new Point(
+					Distance.expand(mean, active, ds.nFeatures()));
 
 			// If the new centroid is the same as the previois centroid, we are
 			// finished with this cluster. If not, the new centroid is setted
-			if (newCentroid.equals(ds, c.getCentroid())) {
-				c.setFinished(true);
+			if (newCentroid.equals(ds, cluster.getCentroid())) {
+				cluster.setFinished(true);
 				logger.debug("The same");
 			} else {
-				c.setCentroid(newCentroid);
+				cluster.setFinished(false);
+				cluster.setCentroid(newCentroid);
 				logger.debug(newCentroid.toString());
 			}
 		}
@@ -0,0 +1,315 @@
+package clustering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import data.DataSet;
+import data.Distance;
+import data.Point;
+
+/**
+ * Sweep of k-means over a range of numbers of clusters to recommend one. Each
+ * k starts from the centroids of the previous one plus a new centroid chosen
+ * with k-means++ (warm start), so it converges in few iterations, and is
+ * scored with its inertia and the silhouette of a sample of points. Scores are
+ * calculated in the pool while the next k is running.
+ * <p>
+ * The recommended k is the one with the highest silhouette. The elbow of the
+ * inertia (the k furthest below the line between the inertias of the first
+ * and the last k) is also shown.
+ */
+public class KSweep {
+	/** Number of points of the sample used to calculate the silhouette */
+	private static final int SAMPLE_SIZE = 2000;
+
+	/** Data set with the points */
+	private final DataSet ds;
+	/** Number of threads (0 to use all the processors) */
+	private int threads;
+	/** Way of assigning the points to the clusters */
+	private Algorithm algorithm = Algorithm.LLOYD;
+	/** Seed of the random numbers */
+	private long seed = 1;
+
+	/** Smallest k of the sweep */
+	private int minK;
+	/** Inertia of each k (starting from the smallest one) */
+	private double[] inertias;
+	/** Silhouette of each k (starting from the smallest one) */
+	private double[] silhouettes;
+
+	/** Rows of the data set in the sample */
+	private int[] sample;
+	/** Distances between the points of the sample (lower triangle) */
+	private float[][] sampleDistances;
+
+	/**
+	 * Create a new sweep.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 */
+	public KSweep(DataSet ds) {
+		this.ds = ds;
+	}
+
+	/**
+	 * Set the number of threads.
+	 *
+	 * @param threads
+	 *            number of threads (0 to use all the processors)
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Set the way of assigning the points to the clusters.
+	 *
+	 * @param algorithm
+	 *            algorithm
+	 */
+	public void setAlgorithm(Algorithm algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	/**
+	 * Set the seed of the random numbers, so sweeps can be repeated.
+	 *
+	 * @param seed
+	 *            seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Execute k-means for each k of a range and recommend one.
+	 *
+	 * @param minK
+	 *            smallest number of clusters (2 at least)
+	 * @param maxK
+	 *            biggest number of clusters
+	 * @return recommended number of clusters
+	 */
+	public int run(int minK, int maxK) {
+		if (minK < 2 || maxK < minK) {
+			throw new IllegalArgumentException(
+					"Wrong range of k: " + minK + " - " + maxK);
+		}
+		System.out.println(
+				"> Sweeping k from " + minK + " to " + maxK + "...");
+		this.minK = minK;
+		inertias = new double[maxK - minK + 1];
+		silhouettes = new double[maxK - minK + 1];
+
+		ForkJoinPool pool = threads > 0 ? new ForkJoinPool(threads)
+				: ForkJoinPool.commonPool();
+		try {
+			chooseSample(pool);
+
+			List<ForkJoinTask<?>> scores = new ArrayList<ForkJoinTask<?>>();
+			List<Point> centroids = null;
+			List<KdTree> trees = null; // Shared by all the k
+			for (int k = minK; k <= maxK; k++) {
+				KMeans kMeans = new KMeans(ds);
+				kMeans.setPool(pool);
+				kMeans.setAlgorithm(algorithm);
+				kMeans.setSeed(seed + k);
+				kMeans.setInitialCentroids(centroids);
+				kMeans.setTrees(trees);
+				List<Cluster> clusters = kMeans.run(k);
+				trees = kMeans.getTrees();
+
+				inertias[k - minK] = kMeans.getInertia();
+				centroids = new ArrayList<Point>();
+				for (Cluster cluster : clusters) {
+					centroids.add(cluster.getCentroid());
+				}
+				scores.add(pool.submit(silhouette(k, kMeans.getLabels())));
+			}
+			for (ForkJoinTask<?> score : scores) {
+				score.join();
+			}
+		} finally {
+			if (pool != ForkJoinPool.commonPool()) {
+				pool.shutdown();
+			}
+		}
+
+		// Show figures
+		int recommended = minK;
+		for (int k = minK; k <= maxK; k++) {
+			if (silhouettes[k - minK] > silhouettes[recommended - minK]) {
+				recommended = k;
+			}
+		}
+		System.out.println("      k\tinertia\tsilhouette");
+		for (int k = minK; k <= maxK; k++) {
+			System.out.println("      " + k + "\t" + (float) inertias[k - minK]
+					+ "\t" + (float) silhouettes[k - minK]);
+		}
+		System.out.println("      Elbow of the inertia: k = " + getElbow());
+		System.out.println("      Recommended (best silhouette): k = "
+				+ recommended);
+		return recommended;
+	}
+
+	/**
+	 * Get the inertia of a number of clusters of the last sweep.
+	 *
+	 * @param k
+	 *            number of clusters
+	 * @return sum of the squared distances of the points to their centroids
+	 */
+	public double getInertia(int k) {
+		return inertias[k - minK];
+	}
+
+	/**
+	 * Get the silhouette of a number of clusters of the last sweep.
+	 *
+	 * @param k
+	 *            number of clusters
+	 * @return mean silhouette of the points of the sample (from -1 to 1)
+	 */
+	public double getSilhouette(int k) {
+		return silhouettes[k - minK];
+	}
+
+	/**
+	 * Get the elbow of the inertia of the last sweep: the k furthest below the
+	 * line between the inertias of the first and the last k.
+	 *
+	 * @return number of clusters
+	 */
+	public int getElbow() {
+		int n = inertias.length;
+		int elbow = minK;
+		double furthest = 0;
+		for (int i = 1; i < n - 1; i++) {
+			double line = inertias[0] + (inertias[n - 1] - inertias[0]) * i
+					/ (n - 1);
+			if (line - inertias[i] > furthest) {
+				furthest = line - inertias[i];
+				elbow = minK + i;
+			}
+		}
+		return elbow;
+	}
+
+	/**
+	 * Choose the points of the sample and calculate the distances between
+	 * them in parallel. The distances don't depend on k, so they are
+	 * calculated once for all the sweep.
+	 *
+	 * @param pool
+	 *            pool of threads
+	 */
+	private void chooseSample(ForkJoinPool pool) {
+		int n = ds.nPoints();
+		Random random = new Random(seed);
+		if (n <= SAMPLE_SIZE) {
+			sample = new int[n];
+			for (int p = 0; p < n; p++) {
+				sample[p] = p;
+			}
+		} else {
+			// Selection sampling: each row with the probability of the rows
+			// still needed
+			sample = new int[SAMPLE_SIZE];
+			for (int p = 0, chosen = 0; chosen < SAMPLE_SIZE; p++) {
+				if (random.nextInt(n - p) < SAMPLE_SIZE - chosen) {
+					sample[chosen++] = p;
+				}
+			}
+		}
+
+		final int[] active = ds.getCompleteFeatures();
+		final float[][] values = new float[sample.length][active.length];
+		for (int i = 0; i < sample.length; i++) {
+			ds.getValues(sample[i], active, values[i]);
+		}
+		sampleDistances = new float[sample.length][];
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for (int i = 0; i < sample.length; i++) {
+			final int row = i;
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					float[] distances = new float[row];
+					for (int j = 0; j < row; j++) {
+						distances[j] = (float) Math.sqrt(
+								Distance.squared(values[row], values[j]));
+					}
+					sampleDistances[row] = distances;
+				}
+			});
+		}
+		KMeans.invokeAll(pool, tasks);
+	}
+
+	/**
+	 * Task that calculates the mean silhouette of the points of the sample:
+	 * (b - a) / max(a, b), where a is the mean distance to the other points of
+	 * its cluster and b the mean distance to the points of the closest other
+	 * cluster (0 for points alone in their cluster).
+	 *
+	 * @param k
+	 *            number of clusters
+	 * @param labels
+	 *            cluster of each point of the data set built with k
+	 * @return task that puts the silhouette in its place
+	 */
+	private RecursiveAction silhouette(final int k, int[] labels) {
+		// Cluster of each point of the sample
+		final int[] sampleLabels = new int[sample.length];
+		final int[] sizes = new int[k];
+		for (int i = 0; i < sample.length; i++) {
+			sampleLabels[i] = labels[sample[i]];
+			sizes[sampleLabels[i]]++;
+		}
+
+		return new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				double total = 0;
+				double[] sums = new double[k];
+				for (int i = 0; i < sample.length; i++) {
+					int own = sampleLabels[i];
+					if (sizes[own] == 1) {
+						continue;
+					}
+					Arrays.fill(sums, 0);
+					for (int j = 0; j < sample.length; j++) {
+						if (j != i) {
+							sums[sampleLabels[j]] += j < i
+									? sampleDistances[i][j]
+									: sampleDistances[j][i];
+						}
+					}
+					double a = sums[own] / (sizes[own] - 1);
+					double b = Double.MAX_VALUE;
+					for (int c = 0; c < k; c++) {
+						if (c != own && sizes[c] > 0) {
+							b = Math.min(b, sums[c] / sizes[c]);
+						}
+					}
+					if (b != Double.MAX_VALUE && Math.max(a, b) > 0) {
+						total += (b - a) / Math.max(a, b);
+					}
+				}
+				silhouettes[k - minK] = total / sample.length;
+			}
+		};
+	}
+}
@@ -0,0 +1,206 @@
+package clustering;
+
+import java.util.Arrays;
+
+import data.DataSet;
+
+/**
+ * KD-tree of a range of rows of a data set, with their values compacted to the
+ * features used to measure distances. Each node is a range of the rows sorted
+ * by the tree, with the box that bounds their values and the sum of their
+ * values, so a whole node can be added to a cluster at once. Nodes are split
+ * by the median of their widest feature until they have few rows.
+ * <p>
+ * Nodes are kept in arrays: node 0 is the root and the values of the boxes and
+ * the sums of node n start at n * (number of features).
+ */
+class KdTree {
+	/** Maximum number of rows of a leaf */
+	static final int LEAF_SIZE = 32;
+
+	/** Number of features of the values */
+	final int d;
+	/** Rows of the data set in the order of the tree */
+	final int[] rows;
+	/** Values of the rows in the order of the tree (d values per row) */
+	final float[] values;
+	/** Sum of the squared values of all the rows */
+	final double squaredNorms;
+	/** Number of nodes */
+	int nNodes;
+	/** Depth of the deepest node (0 for the root) */
+	int depth;
+	/** Position of the first row of each node */
+	int[] start;
+	/** Position after the last row of each node */
+	int[] end;
+	/** First child of each node, followed by the second one (-1 if leaf) */
+	int[] child;
+	/** Lowest value of each feature in each node */
+	float[] lower;
+	/** Highest value of each feature in each node */
+	float[] upper;
+	/** Sum of each feature in each node */
+	double[] sums;
+
+	/**
+	 * Build the tree of a range of rows.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param from
+	 *            first row
+	 * @param to
+	 *            row after the last row
+	 * @param active
+	 *            features used to measure distances
+	 */
+	KdTree(DataSet ds, int from, int to, int[] active) {
+		int n = to - from;
+		d = active.length;
+
+		// Values in the order of the data set
+		float[] original = new float[n * d];
+		float[] row = new float[d];
+		double norms = 0;
+		for (int r = 0; r < n; r++) {
+			ds.getValues(from + r, active, row);
+			System.arraycopy(row, 0, original, r * d, d);
+			for (float value : row) {
+				norms += (double) value * value;
+			}
+		}
+		squaredNorms = norms;
+
+		int capacity = Math.max(1, 4 * n / LEAF_SIZE + 1);
+		start = new int[capacity];
+		end = new int[capacity];
+		child = new int[capacity];
+		lower = new float[capacity * d];
+		upper = new float[capacity * d];
+		sums = new double[capacity * d];
+
+		int[] order = new int[n];
+		for (int r = 0; r < n; r++) {
+			order[r] = r;
+		}
+		nNodes = 1;
+		build(0, 0, n, 0, order, original);
+
+		// Rows and values in the order of the tree
+		rows = new int[n];
+		values = new float[n * d];
+		for (int i = 0; i < n; i++) {
+			rows[i] = from + order[i];
+			System.arraycopy(original, order[i] * d, values, i * d, d);
+		}
+	}
+
+	/**
+	 * Build a node and its descendants.
+	 *
+	 * @param node
+	 *            index of the node
+	 * @param first
+	 *            position of the first row of the node
+	 * @param last
+	 *            position after the last row of the node
+	 * @param level
+	 *            depth of the node
+	 * @param order
+	 *            rows (relative to the range) sorted by the tree
+	 * @param original
+	 *            values of the rows in the order of the data set
+	 */
+	private void build(int node, int first, int last, int level, int[] order,
+			float[] original) {
+		start[node] = first;
+		end[node] = last;
+		child[node] = -1;
+		depth = Math.max(depth, level);
+
+		// Box and sums of the node
+		int base = node * d;
+		Arrays.fill(lower, base, base + d, Float.POSITIVE_INFINITY);
+		Arrays.fill(upper, base, base + d, Float.NEGATIVE_INFINITY);
+		for (int i = first; i < last; i++) {
+			int offset = order[i] * d;
+			for (int f = 0; f < d; f++) {
+				float value = original[offset + f];
+				lower[base + f] = Math.min(lower[base + f], value);
+				upper[base + f] = Math.max(upper[base + f], value);
+				sums[base + f] += value;
+			}
+		}
+
+		// Split by the widest feature (if all the rows are equal, it's a leaf)
+		int widest = -1;
+		float width = 0;
+		for (int f = 0; f < d; f++) {
+			if (upper[base + f] - lower[base + f] > width) {
+				width = upper[base + f] - lower[base + f];
+				widest = f;
+			}
+		}
+		if (last - first <= LEAF_SIZE || widest == -1) {
+			return;
+		}
+		int middle = (first + last) >>> 1;
+		select(order, original, widest, first, last - 1, middle);
+
+		int left = nNodes;
+		nNodes += 2;
+		child[node] = left;
+		build(left, first, middle, level + 1, order, original);
+		build(left + 1, middle, last, level + 1, order, original);
+	}
+
+	/**
+	 * Reorder rows so the one at a position is the one that would be there if
+	 * they were sorted by a feature, with the lower ones before it and the
+	 * higher ones after it (quickselect).
+	 *
+	 * @param order
+	 *            rows
+	 * @param original
+	 *            values of the rows
+	 * @param f
+	 *            feature
+	 * @param left
+	 *            first position
+	 * @param right
+	 *            last position
+	 * @param k
+	 *            position to find
+	 */
+	private void select(int[] order, float[] original, int f, int left,
+			int right, int k) {
+		while (left < right) {
+			float pivot = original[order[(left + right) >>> 1] * d + f];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (original[order[i] * d + f] < pivot) {
+					i++;
+				}
+				while (original[order[j] * d + f] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int swap = order[i];
+					order[i] = order[j];
+					order[j] = swap;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				right = j;
+			} else if (k >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package clustering;
+
+import data.DataSet;
+
+/**
+ * Partition that calculates the distance from each row to every centroid.
+ */
+class LloydPartition extends Partition {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Create a new partition.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param from
+	 *            first row
+	 * @param to
+	 *            row after the last row
+	 * @param active
+	 *            features used to measure distances
+	 * @param labels
+	 *            array where to put the cluster of each row
+	 * @param k
+	 *            number of clusters
+	 */
+	LloydPartition(DataSet ds, int from, int to, int[] active, int[] labels,
+			int k) {
+		super(ds, from, to, active, labels, k);
+	}
+
+	@Override
+	int assign(int row, float[] values) {
+		float[][] centroids = this.centroids.values;
+		int closest = 0;
+		double minimumDistance = Double.MAX_VALUE;
+		for (int c = 0; c < centroids.length; c++) {
+			// Squared Euclidian distance between the row and the centroid
+			double distance = squaredDistance(values, centroids[c]);
+			if (minimumDistance > distance) {
+				minimumDistance = distance;
+				closest = c;
+			}
+		}
+		return closest;
+	}
+}
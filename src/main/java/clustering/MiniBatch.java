@@ -0,0 +1,151 @@
+package clustering;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import data.DataSet;
+import data.Distance;
+
+/**
+ * Mini-batch k-means (Sculley). Instead of assigning all the points in each
+ * iteration, each iteration takes a small random batch of points, assigns them
+ * to their closest centroid and moves each centroid towards its points with a
+ * learning rate of its own: the inverse of the number of points it has
+ * received so far. The batch is assigned in parallel and the centroids are
+ * moved in order, so the same seed always gives the same centroids.
+ */
+class MiniBatch {
+	/** Number of points of the batch assigned by each task */
+	private static final int POINTS_PER_TASK = 1 << 10;
+	/** Biggest move of a centroid in a batch to consider it stable */
+	static final double DEFAULT_TOLERANCE = 1e-4;
+
+	/** Data set */
+	private final DataSet ds;
+	/** Features used to measure distances */
+	private final int[] active;
+	/** Pool of threads */
+	private final ForkJoinPool pool;
+	/** Random numbers to choose the points of the batches */
+	private final Random random;
+	/** Number of distances calculated */
+	long nDistances;
+
+	/**
+	 * Create a new mini-batch k-means.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param active
+	 *            features used to measure distances
+	 * @param pool
+	 *            pool of threads
+	 * @param seed
+	 *            seed of the random numbers
+	 */
+	MiniBatch(DataSet ds, int[] active, ForkJoinPool pool, long seed) {
+		this.ds = ds;
+		this.active = active;
+		this.pool = pool;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Move the centroids with batches of points until they are stable or the
+	 * maximum number of batches is reached.
+	 *
+	 * @param centroids
+	 *            compacted values of the initial centroids (they are moved)
+	 * @param batchSize
+	 *            number of points of each batch
+	 * @param maxBatches
+	 *            maximum number of batches
+	 * @param tolerance
+	 *            biggest move of a centroid in a batch to consider it stable
+	 * @return number of batches processed
+	 */
+	int run(final float[][] centroids, int batchSize, int maxBatches,
+			double tolerance) {
+		int n = ds.nPoints();
+		if (n == 0) {
+			return 0;
+		}
+		final float[][] batch = new float[batchSize][active.length];
+		final int[] closest = new int[batchSize];
+		long[] received = new long[centroids.length];
+
+		int nBatches = 0;
+		double maxMove = Double.MAX_VALUE;
+		while (nBatches < maxBatches && maxMove > tolerance) {
+			nBatches++;
+
+			// Random batch (with replacement)
+			for (int i = 0; i < batchSize; i++) {
+				ds.getValues(random.nextInt(n), active, batch[i]);
+			}
+
+			// Closest centroid of each point, in parallel
+			List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+			for (int from = 0; from < batchSize; from += POINTS_PER_TASK) {
+				final int start = from;
+				final int end = Math.min(batchSize, from + POINTS_PER_TASK);
+				tasks.add(new RecursiveAction() {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected void compute() {
+						for (int i = start; i < end; i++) {
+							closest[i] = closest(batch[i], centroids);
+						}
+					}
+				});
+			}
+			KMeans.invokeAll(pool, tasks);
+			nDistances += (long) batchSize * centroids.length;
+
+			// Move the centroids towards their points
+			float[][] before = new float[centroids.length][];
+			for (int c = 0; c < centroids.length; c++) {
+				before[c] = centroids[c].clone();
+			}
+			for (int i = 0; i < batchSize; i++) {
+				float[] centroid = centroids[closest[i]];
+				double rate = 1.0 / ++received[closest[i]];
+				for (int f = 0; f < centroid.length; f++) {
+					centroid[f] += (float) (rate * (batch[i][f] - centroid[f]));
+				}
+			}
+			maxMove = 0;
+			for (int c = 0; c < centroids.length; c++) {
+				maxMove = Math.max(maxMove,
+						Math.sqrt(Distance.squared(before[c], centroids[c])));
+			}
+		}
+		return nBatches;
+	}
+
+	/**
+	 * Get the closest centroid to a point.
+	 *
+	 * @param values
+	 *            compacted values of the point
+	 * @param centroids
+	 *            compacted values of the centroids
+	 * @return index of the closest centroid (the first one if there are ties)
+	 */
+	private int closest(float[] values, float[][] centroids) {
+		int closest = 0;
+		double minimumDistance = Double.MAX_VALUE;
+		for (int c = 0; c < centroids.length; c++) {
+			double distance = Distance.squared(values, centroids[c]);
+			if (minimumDistance > distance) {
+				minimumDistance = distance;
+				closest = c;
+			}
+		}
+		return closest;
+	}
+}
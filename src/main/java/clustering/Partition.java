@@ -0,0 +1,251 @@
+package clustering;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+import data.DataSet;
+import data.Distance;
+
+/**
+ * Range of rows of a data set processed in parallel with the other partitions
+ * in each iteration of k-means. Each row is assigned to its closest centroid
+ * and, in the same pass, the partial sums of the clusters are updated: in the
+ * first pass every row is added to its cluster, and after that only the rows
+ * whose cluster changed are moved from one sum to the other. Partial sums
+ * belong to the partition, so no synchronization is needed; they are reduced
+ * in order at the end of the iteration, so the result doesn't depend on the
+ * number of threads.
+ * <p>
+ * Rows and centroids are compacted to the features used to measure distances
+ * (see {@link Distance}), so sums are also kept by position in that array.
+ * <p>
+ * Subclasses decide how the closest centroid is found (see {@link Algorithm}).
+ */
+abstract class Partition extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	/** Data set */
+	private final DataSet ds;
+	/** First row of the partition */
+	final int from;
+	/** Row after the last row of the partition */
+	final int to;
+	/** Features used to measure distances (without missed values) */
+	final int[] active;
+	/** Cluster of each row of the data set (shared by all partitions) */
+	final int[] labels;
+	/** Compacted values of the row being processed */
+	private final float[] values;
+
+	/** Centroids of the iteration */
+	Centroids centroids;
+	/** Sum of each active feature of the rows of each cluster */
+	final double[][] sums;
+	/** Number of rows of each cluster */
+	final int[] counts;
+	/** Number of distances calculated in the iteration */
+	long nDistances;
+	/** Number of rows whose cluster changed in the iteration */
+	int nChanged;
+	/** If it is the first pass, when the sums are calculated from scratch */
+	boolean first;
+	/** Sum of the squared active values of the rows (only in the first pass) */
+	double squaredNorms;
+
+	/**
+	 * Create a new partition.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param from
+	 *            first row
+	 * @param to
+	 *            row after the last row
+	 * @param active
+	 *            features used to measure distances
+	 * @param labels
+	 *            array where to put the cluster of each row
+	 * @param k
+	 *            number of clusters
+	 */
+	Partition(DataSet ds, int from, int to, int[] active, int[] labels,
+			int k) {
+		this.ds = ds;
+		this.from = from;
+		this.to = to;
+		this.active = active;
+		this.labels = labels;
+		this.values = new float[active.length];
+		this.sums = new double[k][active.length];
+		this.counts = new int[k];
+	}
+
+	/**
+	 * Create a partition for an algorithm.
+	 *
+	 * @param algorithm
+	 *            way of finding the closest centroid
+	 * @param ds
+	 *            data set (standardized)
+	 * @param from
+	 *            first row
+	 * @param to
+	 *            row after the last row
+	 * @param active
+	 *            features used to measure distances
+	 * @param labels
+	 *            array where to put the cluster of each row
+	 * @param k
+	 *            number of clusters
+	 * @param tree
+	 *            KD-tree of the rows, used only by the filtering algorithm
+	 * @return partition
+	 */
+	static Partition create(Algorithm algorithm, DataSet ds, int from, int to,
+			int[] active, int[] labels, int k, KdTree tree) {
+		switch (algorithm) {
+		case HAMERLY:
+			return new HamerlyPartition(ds, from, to, active, labels, k);
+		case ELKAN:
+			return new ElkanPartition(ds, from, to, active, labels, k);
+		case BLOCKED:
+			return new BlockedPartition(ds, from, to, active, labels, k);
+		case FILTERING:
+			return new FilteringPartition(ds, from, to, active, labels, k,
+					tree);
+		case YINYANG:
+			return new YinyangPartition(ds, from, to, active, labels, k);
+		default:
+			return new LloydPartition(ds, from, to, active, labels, k);
+		}
+	}
+
+	/**
+	 * Prepare the partition for a new iteration.
+	 *
+	 * @param centroids
+	 *            centroids to assign the rows to
+	 */
+	void prepare(Centroids centroids) {
+		this.centroids = centroids;
+		reinitialize();
+	}
+
+	@Override
+	protected void compute() {
+		start();
+		for (int row = from; row < to; row++) {
+			ds.getValues(row, active, values);
+			update(row, values, assign(row, values));
+		}
+	}
+
+	/**
+	 * Reset the figures of the iteration and, in the first pass, the sums.
+	 */
+	void start() {
+		// Norms don't change between iterations, so they are summed only once
+		first = centroids.drift == null;
+		if (first) {
+			for (double[] sum : sums) {
+				Arrays.fill(sum, 0);
+			}
+			Arrays.fill(counts, 0);
+			squaredNorms = 0;
+		}
+		nDistances = 0;
+		nChanged = 0;
+	}
+
+	/**
+	 * Put a row in its cluster, moving it in the sums if its cluster changed.
+	 *
+	 * @param row
+	 *            row of the data set
+	 * @param values
+	 *            compacted values of the row
+	 * @param closest
+	 *            index of the closest centroid
+	 */
+	void update(int row, float[] values, int closest) {
+		if (first) {
+			add(closest, values, 1);
+			for (int i = 0; i < values.length; i++) {
+				double value = values[i];
+				squaredNorms += value * value;
+			}
+		} else if (closest != labels[row]) {
+			add(labels[row], values, -1);
+			add(closest, values, 1);
+			nChanged++;
+		}
+		labels[row] = closest;
+	}
+
+	/**
+	 * Add a row to the sums of a cluster or remove it.
+	 *
+	 * @param cluster
+	 *            index of the cluster
+	 * @param values
+	 *            compacted values of the row
+	 * @param sign
+	 *            1 to add the row, -1 to remove it
+	 */
+	private void add(int cluster, float[] values, int sign) {
+		counts[cluster] += sign;
+		double[] sum = sums[cluster];
+		for (int i = 0; i < values.length; i++) {
+			sum[i] += sign * values[i];
+		}
+	}
+
+	/**
+	 * Find the closest centroid to a row.
+	 *
+	 * @param row
+	 *            row of the data set
+	 * @param values
+	 *            compacted values of the row
+	 * @return index of the closest centroid (the first one if there are ties)
+	 */
+	abstract int assign(int row, float[] values);
+
+	/**
+	 * Squared Euclidean distance between a row and a centroid.
+	 *
+	 * @param values
+	 *            compacted values of the row
+	 * @param centroid
+	 *            compacted values of the centroid
+	 * @return squared distance
+	 */
+	double squaredDistance(float[] values, float[] centroid) {
+		nDistances++;
+		return Distance.squared(values, centroid);
+	}
+
+	/**
+	 * Round up a distance to store it as a float, so a bound never gets
+	 * tighter than the real distance.
+	 *
+	 * @param distance
+	 *            distance
+	 * @return float greater than the distance
+	 */
+	static float up(double distance) {
+		return Math.nextUp((float) distance);
+	}
+
+	/**
+	 * Round down a distance to store it as a float, so a bound never gets
+	 * tighter than the real distance.
+	 *
+	 * @param distance
+	 *            distance
+	 * @return float less than the distance (0 at least)
+	 */
+	static float down(double distance) {
+		return distance <= 0 ? 0 : Math.max(0, Math.nextDown((float) distance));
+	}
+}
@@ -0,0 +1,396 @@
+package clustering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import data.DataSet;
+import data.Distance;
+
+/**
+ * Chooser of the initial centroids of k-means among the points of the data set
+ * with k-means++ or k-means||. Both keep the squared distance from each point
+ * to its closest chosen centroid, which is updated in parallel by blocks of
+ * rows. Blocks don't depend on the number of threads and each one has its own
+ * random numbers, so the same seed always chooses the same centroids. Points
+ * are compacted to the features used to measure distances while they are
+ * chosen.
+ */
+class Seeder {
+	/** Number of rows of each block */
+	private static final int ROWS_PER_BLOCK = 1 << 14;
+	/** Rounds of k-means|| */
+	private static final int ROUNDS = 5;
+	/** Points sampled in each round of k-means|| for each cluster */
+	private static final int OVERSAMPLING = 2;
+
+	/** Data set */
+	private final DataSet ds;
+	/** Features used to measure distances */
+	private final int[] active;
+	/** Pool of threads */
+	private final ForkJoinPool pool;
+	/** Seed of the random numbers */
+	private final long seed;
+	/** Random numbers of the choices made sequentially */
+	private final Random random;
+
+	/** Squared distance of each point to its closest chosen point */
+	private double[] distances;
+	/** Index of the closest chosen point to each point */
+	private int[] nearest;
+	/** Sum of the distances of each block */
+	private double[] blockSums;
+	/** Compacted values of the points chosen */
+	private List<float[]> chosen;
+
+	/**
+	 * Create a new seeder.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param active
+	 *            features used to measure distances
+	 * @param pool
+	 *            pool of threads
+	 * @param seed
+	 *            seed of the random numbers
+	 */
+	Seeder(DataSet ds, int[] active, ForkJoinPool pool, long seed) {
+		this.ds = ds;
+		this.active = active;
+		this.pool = pool;
+		this.seed = seed;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Choose the centroids with k-means++: the first one at random and each of
+	 * the next ones with probability proportional to its squared distance to
+	 * the closest centroid already chosen.
+	 *
+	 * @param k
+	 *            number of centroids
+	 * @return values of the centroids (0 in features with missed values)
+	 */
+	List<float[]> kMeansPlusPlus(int k) {
+		start();
+		while (chosen.size() < k && ds.nPoints() > 0) {
+			chooseProportionally();
+		}
+		return expand(chosen);
+	}
+
+	/**
+	 * Choose the centroids that are missing with k-means++, keeping some
+	 * centroids already chosen (for example, the ones of a previous execution
+	 * with less clusters).
+	 *
+	 * @param initial
+	 *            values of the centroids kept (0 in features with missed
+	 *            values)
+	 * @param k
+	 *            number of centroids
+	 * @return values of the centroids (0 in features with missed values)
+	 */
+	List<float[]> kMeansPlusPlus(List<float[]> initial, int k) {
+		if (initial.isEmpty()) {
+			return kMeansPlusPlus(k);
+		}
+		if (initial.size() >= k) {
+			return new ArrayList<float[]>(initial.subList(0, k));
+		}
+		reset();
+		List<float[]> kept = new ArrayList<float[]>();
+		for (float[] centroid : initial) {
+			kept.add(Distance.compact(centroid, active));
+		}
+		update(kept);
+		while (chosen.size() < k && ds.nPoints() > 0) {
+			chooseProportionally();
+		}
+		return expand(chosen);
+	}
+
+	/**
+	 * Choose the centroids with k-means||: a few rounds sample many points at
+	 * once in parallel, with probability proportional to their squared
+	 * distance, and then k of them are chosen with k-means++ weighted by the
+	 * number of points closest to each one.
+	 *
+	 * @param k
+	 *            number of centroids
+	 * @return values of the centroids (0 in features with missed values)
+	 */
+	List<float[]> kMeansParallel(int k) {
+		start();
+		for (int round = 0; round < ROUNDS && total() > 0; round++) {
+			sample(round, (double) OVERSAMPLING * k / total());
+		}
+		while (chosen.size() < k && ds.nPoints() > 0) {
+			chooseProportionally();
+		}
+		if (chosen.size() <= k) {
+			return expand(chosen);
+		}
+
+		// Weight of each candidate: number of points closest to it
+		double[] weights = new double[chosen.size()];
+		for (int p = 0; p < nearest.length; p++) {
+			weights[nearest[p]]++;
+		}
+		return expand(weightedKMeansPlusPlus(chosen, weights, k));
+	}
+
+	/**
+	 * Choose the first point at random and calculate the distances to it.
+	 */
+	private void start() {
+		reset();
+		int n = ds.nPoints();
+		if (n > 0) {
+			List<float[]> first = new ArrayList<float[]>();
+			first.add(values(random.nextInt(n)));
+			update(first);
+		}
+	}
+
+	/**
+	 * Forget the points chosen.
+	 */
+	private void reset() {
+		int n = ds.nPoints();
+		distances = new double[n];
+		nearest = new int[n];
+		blockSums = new double[(n + ROWS_PER_BLOCK - 1) / ROWS_PER_BLOCK];
+		Arrays.fill(distances, Double.MAX_VALUE);
+		chosen = new ArrayList<float[]>();
+	}
+
+	/**
+	 * Choose a point with probability proportional to its squared distance.
+	 * If all the points are at distance 0, the point is chosen at random.
+	 */
+	private void chooseProportionally() {
+		int row = -1;
+		double total = total();
+		if (total > 0) {
+			// Skip whole blocks with their sums and look for the point inside
+			// the block
+			double target = random.nextDouble() * total;
+			int b = 0;
+			while (b < blockSums.length - 1 && target >= blockSums[b]) {
+				target -= blockSums[b];
+				b++;
+			}
+			int to = Math.min(distances.length, (b + 1) * ROWS_PER_BLOCK);
+			for (int p = b * ROWS_PER_BLOCK; p < to; p++) {
+				if (distances[p] > 0) {
+					row = p; // The last one if rounding errors skip all
+					target -= distances[p];
+					if (target < 0) {
+						break;
+					}
+				}
+			}
+		}
+		if (row == -1) {
+			row = random.nextInt(distances.length);
+		}
+		List<float[]> next = new ArrayList<float[]>();
+		next.add(values(row));
+		update(next);
+	}
+
+	/**
+	 * Sample each point independently with probability proportional to its
+	 * squared distance, in parallel by blocks.
+	 *
+	 * @param round
+	 *            round of k-means||
+	 * @param factor
+	 *            factor of the squared distance to get the probability
+	 */
+	private void sample(final int round, final double factor) {
+		final List<List<Integer>> sampled = new ArrayList<List<Integer>>();
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for (int b = 0; b < blockSums.length; b++) {
+			final int block = b;
+			final List<Integer> rows = new ArrayList<Integer>();
+			sampled.add(rows);
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					Random blockRandom = new Random(
+							seed + 0x9E3779B97F4A7C15L * (round + 1)
+									+ 0xBF58476D1CE4E5B9L * block);
+					int to = Math.min(distances.length,
+							(block + 1) * ROWS_PER_BLOCK);
+					for (int p = block * ROWS_PER_BLOCK; p < to; p++) {
+						if (blockRandom.nextDouble() < factor * distances[p]) {
+							rows.add(p);
+						}
+					}
+				}
+			});
+		}
+		KMeans.invokeAll(pool, tasks);
+
+		List<float[]> next = new ArrayList<float[]>();
+		for (List<Integer> rows : sampled) {
+			for (int row : rows) {
+				next.add(values(row));
+			}
+		}
+		update(next);
+	}
+
+	/**
+	 * Add points to the chosen ones and update the distances of all the
+	 * points to their closest chosen point, in parallel by blocks.
+	 *
+	 * @param next
+	 *            compacted values of the new points chosen
+	 */
+	private void update(final List<float[]> next) {
+		if (next.isEmpty()) {
+			return;
+		}
+		final int first = chosen.size();
+		chosen.addAll(next);
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for (int b = 0; b < blockSums.length; b++) {
+			final int block = b;
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					float[] values = new float[active.length];
+					int to = Math.min(distances.length,
+							(block + 1) * ROWS_PER_BLOCK);
+					double sum = 0;
+					for (int p = block * ROWS_PER_BLOCK; p < to; p++) {
+						ds.getValues(p, active, values);
+						for (int c = 0; c < next.size(); c++) {
+							double distance = Distance.squared(values,
+									next.get(c));
+							if (distance < distances[p]) {
+								distances[p] = distance;
+								nearest[p] = first + c;
+							}
+						}
+						sum += distances[p];
+					}
+					blockSums[block] = sum;
+				}
+			});
+		}
+		KMeans.invokeAll(pool, tasks);
+	}
+
+	/**
+	 * Choose points with k-means++ weighting each point (for example, the
+	 * candidates of k-means|| or the rows of a coreset).
+	 *
+	 * @param points
+	 *            compacted values of the points (at least one)
+	 * @param weights
+	 *            weight of each point
+	 * @param k
+	 *            number of points to choose
+	 * @return compacted values of the chosen points (the same arrays)
+	 */
+	List<float[]> weightedKMeansPlusPlus(List<float[]> points,
+			double[] weights, int k) {
+		double[] closest = new double[points.size()];
+		Arrays.fill(closest, Double.MAX_VALUE);
+		List<float[]> result = new ArrayList<float[]>();
+
+		// First point with probability proportional to its weight
+		int next = choose(weights, null);
+		while (true) {
+			float[] point = points.get(next);
+			result.add(point);
+			if (result.size() == k) {
+				return result;
+			}
+			for (int i = 0; i < points.size(); i++) {
+				closest[i] = Math.min(closest[i],
+						Distance.squared(points.get(i), point));
+			}
+			next = choose(weights, closest);
+		}
+	}
+
+	/**
+	 * Choose an index with probability proportional to its weight multiplied
+	 * by its distance.
+	 *
+	 * @param weights
+	 *            weight of each index
+	 * @param distances
+	 *            distance of each index (null to use only the weights)
+	 * @return index chosen
+	 */
+	private int choose(double[] weights, double[] distances) {
+		double total = 0;
+		for (int i = 0; i < weights.length; i++) {
+			total += weights[i] * (distances == null ? 1 : distances[i]);
+		}
+		double target = random.nextDouble() * total;
+		for (int i = 0; i < weights.length; i++) {
+			target -= weights[i] * (distances == null ? 1 : distances[i]);
+			if (target < 0) {
+				return i;
+			}
+		}
+		return random.nextInt(weights.length);
+	}
+
+	/**
+	 * Sum of the squared distances of all the points.
+	 *
+	 * @return sum of the distances
+	 */
+	private double total() {
+		double total = 0;
+		for (double sum : blockSums) {
+			total += sum;
+		}
+		return total;
+	}
+
+	/**
+	 * Get the compacted values of a point.
+	 *
+	 * @param row
+	 *            row of the point
+	 * @return values of the features used to measure distances
+	 */
+	private float[] values(int row) {
+		float[] values = new float[active.length];
+		ds.getValues(row, active, values);
+		return values;
+	}
+
+	/**
+	 * Expand the values of the points chosen to all the features.
+	 *
+	 * @param points
+	 *            compacted values of the points
+	 * @return values of the points (0 in features with missed values)
+	 */
+	private List<float[]> expand(List<float[]> points) {
+		List<float[]> expanded = new ArrayList<float[]>();
+		for (float[] point : points) {
+			expanded.add(Distance.expand(point, active, ds.nFeatures()));
+		}
+		return expanded;
+	}
+}
@@ -0,0 +1,23 @@
+package clustering;
+
+/**
+ * Ways of choosing the initial centroids of k-means.
+ */
+public enum Seeding {
+	/**
+	 * Centroids uniformly distributed in the diagonal between the min. and
+	 * max. values of the features
+	 */
+	GRID,
+	/**
+	 * Points of the data set chosen one by one with probability proportional
+	 * to their squared distance to the centroids already chosen (k passes
+	 * over the data set)
+	 */
+	KMEANS_PLUS_PLUS,
+	/**
+	 * Many points sampled at once in a few passes over the data set and
+	 * reduced to k with k-means++ (k-means||), for big data sets
+	 */
+	KMEANS_PARALLEL
+}
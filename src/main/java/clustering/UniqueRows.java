@@ -0,0 +1,214 @@
+package clustering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import data.DataSet;
+
+/**
+ * Rows of a data set without duplicates: rows with the same values in the
+ * features used to measure distances are kept once, with the number of times
+ * they appear as weight. K-means of the unique rows weighted by their
+ * multiplicity builds the same clusters as k-means of all the rows, and the
+ * cluster of each row is the one of its unique row. The other features don't
+ * take part in the distances, so rows that only differ in them, or in their
+ * missed values, are the same unique row.
+ * <p>
+ * Rows are hashed by blocks in parallel and the unique rows of the blocks are
+ * merged in order, so unique rows are numbered by their first appearance
+ * whatever the number of threads.
+ */
+class UniqueRows {
+	/** Number of rows hashed by each task */
+	private static final int ROWS_PER_TASK = 1 << 16;
+
+	/** Compacted values of each unique row */
+	final float[][] values;
+	/** Number of times each unique row appears */
+	final double[] weights;
+	/** Index of the unique row of each row of the data set */
+	final int[] unique;
+
+	/**
+	 * Find the unique rows of a data set.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param active
+	 *            features used to measure distances
+	 * @param pool
+	 *            pool of threads
+	 */
+	UniqueRows(final DataSet ds, final int[] active, ForkJoinPool pool) {
+		int n = ds.nPoints();
+		unique = new int[n];
+
+		// Unique rows of each block, numbered inside the block
+		final List<Block> blocks = new ArrayList<Block>();
+		for (int from = 0; from < n; from += ROWS_PER_TASK) {
+			blocks.add(new Block(ds, active, from,
+					Math.min(n, from + ROWS_PER_TASK)));
+		}
+		KMeans.invokeAll(pool, blocks);
+
+		// Merge the blocks in order
+		Map<Key, Integer> numbers = new HashMap<Key, Integer>();
+		List<Integer> firstRows = new ArrayList<Integer>();
+		List<Integer> counts = new ArrayList<Integer>();
+		final List<int[]> renumbers = new ArrayList<int[]>();
+		for (Block block : blocks) {
+			int[] renumber = new int[block.keys.size()];
+			for (int i = 0; i < renumber.length; i++) {
+				Key key = block.keys.get(i);
+				Integer number = numbers.get(key);
+				if (number == null) {
+					number = firstRows.size();
+					numbers.put(key, number);
+					firstRows.add(block.firstRows.get(i));
+					counts.add(0);
+				}
+				counts.set(number, counts.get(number) + block.counts.get(i));
+				renumber[i] = number;
+			}
+			renumbers.add(renumber);
+			block.keys = null; // Free the keys
+		}
+
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for (int b = 0; b < blocks.size(); b++) {
+			final Block block = blocks.get(b);
+			final int[] renumber = renumbers.get(b);
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					for (int p = block.from; p < block.to; p++) {
+						unique[p] = renumber[unique[p]];
+					}
+				}
+			});
+		}
+		KMeans.invokeAll(pool, tasks);
+
+		values = new float[firstRows.size()][active.length];
+		weights = new double[firstRows.size()];
+		for (int u = 0; u < values.length; u++) {
+			ds.getValues(firstRows.get(u), active, values[u]);
+			weights[u] = counts.get(u);
+		}
+	}
+
+	/**
+	 * Get the number of unique rows.
+	 *
+	 * @return number of unique rows
+	 */
+	int size() {
+		return values.length;
+	}
+
+	/**
+	 * Task that finds the unique rows of a block, putting in
+	 * {@link UniqueRows#unique} the number of each row inside the block.
+	 */
+	private class Block extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/** Data set */
+		private final DataSet ds;
+		/** Features used to measure distances */
+		private final int[] active;
+		/** First row of the block */
+		final int from;
+		/** Row after the last row of the block */
+		final int to;
+		/** Unique rows of the block, in order of appearance */
+		List<Key> keys = new ArrayList<Key>();
+		/** First row of each unique row of the block */
+		final List<Integer> firstRows = new ArrayList<Integer>();
+		/** Number of times each unique row appears in the block */
+		final List<Integer> counts = new ArrayList<Integer>();
+
+		/**
+		 * Create a block.
+		 *
+		 * @param ds
+		 *            data set
+		 * @param active
+		 *            features used to measure distances
+		 * @param from
+		 *            first row
+		 * @param to
+		 *            row after the last row
+		 */
+		Block(DataSet ds, int[] active, int from, int to) {
+			this.ds = ds;
+			this.active = active;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			Map<Key, Integer> numbers = new HashMap<Key, Integer>();
+			float[] row = new float[active.length];
+			for (int p = from; p < to; p++) {
+				ds.getValues(p, active, row);
+				int[] bits = new int[row.length];
+				for (int i = 0; i < row.length; i++) {
+					bits[i] = Float.floatToIntBits(row[i]);
+				}
+				Key key = new Key(bits);
+				Integer number = numbers.get(key);
+				if (number == null) {
+					number = keys.size();
+					numbers.put(key, number);
+					keys.add(key);
+					firstRows.add(p);
+					counts.add(0);
+				}
+				counts.set(number, counts.get(number) + 1);
+				unique[p] = number;
+			}
+		}
+	}
+
+	/**
+	 * Values of a row in the features used to measure distances, compared bit
+	 * by bit.
+	 */
+	private static class Key {
+		/** Bits of each value */
+		private final int[] bits;
+		/** Hash of the bits */
+		private final int hash;
+
+		/**
+		 * Create a key.
+		 *
+		 * @param bits
+		 *            bits of each value
+		 */
+		Key(int[] bits) {
+			this.bits = bits;
+			this.hash = Arrays.hashCode(bits);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && hash == ((Key) o).hash
+					&& Arrays.equals(bits, ((Key) o).bits);
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package clustering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import data.Distance;
+
+/**
+ * K-means of a set of points with weights kept in memory (for example, a
+ * {@link Coreset}): each centroid is the weighted mean of its points. Points
+ * are assigned in parallel by blocks, and the partial sums of the blocks are
+ * reduced in order, so the result doesn't depend on the number of threads.
+ */
+class WeightedKMeans {
+	/** Number of points assigned by each task */
+	private static final int POINTS_PER_TASK = 1 << 12;
+
+	/** Compacted values of the points */
+	private final float[][] points;
+	/** Weight of each point */
+	private final double[] weights;
+	/** Pool of threads */
+	private final ForkJoinPool pool;
+	/** When to stop iterating */
+	private final Convergence convergence;
+	/** Number of distances calculated */
+	long nDistances;
+	/** Cluster of each point in the last assignment */
+	int[] labels;
+	/** Weighted sum of the squared distances to the centroids */
+	double inertia;
+	/** Why the iterations stopped */
+	String stopReason;
+
+	/**
+	 * Create a new weighted k-means.
+	 *
+	 * @param points
+	 *            compacted values of the points
+	 * @param weights
+	 *            weight of each point
+	 * @param pool
+	 *            pool of threads
+	 * @param convergence
+	 *            when to stop iterating
+	 */
+	WeightedKMeans(float[][] points, double[] weights, ForkJoinPool pool,
+			Convergence convergence) {
+		this.points = points;
+		this.weights = weights;
+		this.pool = pool;
+		this.convergence = convergence;
+	}
+
+	/**
+	 * Move the centroids until the convergence policy stops them. The points
+	 * that change of cluster are counted by their weight.
+	 *
+	 * @param centroids
+	 *            compacted values of the initial centroids (they are moved)
+	 * @return number of iterations executed
+	 */
+	int run(final float[][] centroids) {
+		final int k = centroids.length;
+		final int d = centroids.length > 0 ? centroids[0].length : 0;
+		labels = new int[points.length];
+		Arrays.fill(labels, -1);
+
+		// Partial sums of each block, reduced in order
+		int nBlocks = (points.length + POINTS_PER_TASK - 1) / POINTS_PER_TASK;
+		final double[][][] sums = new double[nBlocks][k][d];
+		final double[][] totals = new double[nBlocks][k];
+		final double[] changed = new double[nBlocks];
+		final double[] distances = new double[nBlocks];
+
+		int nIter = 0;
+		inertia = Double.POSITIVE_INFINITY;
+		stopReason = null;
+		while (stopReason == null) {
+			nIter++;
+			List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+			for (int b = 0; b < nBlocks; b++) {
+				final int block = b;
+				tasks.add(new RecursiveAction() {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected void compute() {
+						assign(block, centroids, sums[block], totals[block],
+								changed, distances);
+					}
+				});
+			}
+			KMeans.invokeAll(pool, tasks);
+			nDistances += (long) points.length * k;
+
+			double nChanged = 0;
+			double previousInertia = inertia;
+			inertia = 0;
+			for (int block = 0; block < nBlocks; block++) {
+				nChanged += changed[block];
+				inertia += distances[block];
+			}
+
+			// Weighted mean of each cluster (empty ones don't move)
+			double maxShift = 0;
+			for (int c = 0; c < k; c++) {
+				double total = 0;
+				double[] sum = new double[d];
+				for (int block = 0; block < nBlocks; block++) {
+					total += totals[block][c];
+					for (int i = 0; i < d; i++) {
+						sum[i] += sums[block][c][i];
+					}
+				}
+				if (total > 0) {
+					float[] mean = new float[d];
+					for (int i = 0; i < d; i++) {
+						mean[i] = (float) (sum[i] / total);
+					}
+					maxShift = Math.max(maxShift,
+							Math.sqrt(Distance.squared(mean, centroids[c])));
+					centroids[c] = mean;
+				}
+			}
+			stopReason = convergence.check(nIter, previousInertia, inertia,
+					maxShift, Math.round(nChanged));
+		}
+		return nIter;
+	}
+
+	/**
+	 * Assign the points of a block to their closest centroid and sum them by
+	 * cluster.
+	 *
+	 * @param block
+	 *            index of the block
+	 * @param centroids
+	 *            compacted values of the centroids
+	 * @param sums
+	 *            weighted sum of each feature of each cluster of the block
+	 * @param totals
+	 *            sum of the weights of each cluster of the block
+	 * @param changed
+	 *            weight of the points that changed of cluster in each block
+	 * @param distances
+	 *            weighted sum of the squared distances of each block
+	 */
+	private void assign(int block, float[][] centroids, double[][] sums,
+			double[] totals, double[] changed, double[] distances) {
+		for (double[] sum : sums) {
+			Arrays.fill(sum, 0);
+		}
+		Arrays.fill(totals, 0);
+		changed[block] = 0;
+		distances[block] = 0;
+		int end = Math.min(points.length, (block + 1) * POINTS_PER_TASK);
+		for (int p = block * POINTS_PER_TASK; p < end; p++) {
+			float[] point = points[p];
+			int closest = 0;
+			double minimumDistance = Double.MAX_VALUE;
+			for (int c = 0; c < centroids.length; c++) {
+				double distance = Distance.squared(point, centroids[c]);
+				if (minimumDistance > distance) {
+					minimumDistance = distance;
+					closest = c;
+				}
+			}
+			double weight = weights[p];
+			if (labels[p] != closest) {
+				labels[p] = closest;
+				changed[block] += weight;
+			}
+			distances[block] += weight * minimumDistance;
+			totals[closest] += weight;
+			double[] sum = sums[closest];
+			for (int i = 0; i < point.length; i++) {
+				sum[i] += weight * point[i];
+			}
+		}
+	}
+}
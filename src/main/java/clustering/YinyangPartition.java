@@ -0,0 +1,279 @@
+package clustering;
+
+import java.util.Arrays;
+
+import data.DataSet;
+import data.Distance;
+
+/**
+ * Partition that skips distances with the Yinyang's algorithm of Ding et al.
+ * The centroids are split in groups of close centroids once, with the initial
+ * centroids, and each row keeps an upper bound of the distance to its centroid
+ * and a lower bound of the distance to the centroids of each group (but its
+ * own centroid). Bounds are moved with the biggest drift of each group, so
+ * memory and work per row depend on the number of groups instead of k.
+ * <p>
+ * A row stays in its cluster if its upper bound is below every lower bound
+ * (global filter). Otherwise, only the groups whose lower bound is not above
+ * the distance to the closest centroid so far are checked (group filter), and
+ * inside them the centroids whose own drift keeps them away are skipped too
+ * (local filter). Ties go to the first centroid, like calculating all the
+ * distances.
+ */
+class YinyangPartition extends Partition {
+	private static final long serialVersionUID = 1L;
+
+	/** Number of centroids of each group, on average */
+	private static final int CENTROIDS_PER_GROUP = 10;
+	/** Number of iterations of k-means to group the centroids */
+	private static final int GROUPING_ITERATIONS = 5;
+
+	/** Upper bound of the distance of each row to its centroid */
+	private final float[] upper;
+	/** Lower bound of the distance of each row to each group (null before) */
+	private float[] lower;
+	/** Lower bound of each group for the row being assigned */
+	private double[] bounds;
+	/** Second closest distance of each group for the row being assigned */
+	private double[] seconds;
+	/** If the bounds have been initialized */
+	private boolean hasBounds;
+
+	/**
+	 * Create a new partition.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param from
+	 *            first row
+	 * @param to
+	 *            row after the last row
+	 * @param active
+	 *            features used to measure distances
+	 * @param labels
+	 *            array where to put the cluster of each row
+	 * @param k
+	 *            number of clusters
+	 */
+	YinyangPartition(DataSet ds, int from, int to, int[] active,
+			int[] labels, int k) {
+		super(ds, from, to, active, labels, k);
+		upper = new float[to - from];
+	}
+
+	/**
+	 * Split centroids in groups of close centroids with a few iterations of
+	 * k-means over the centroids, starting from centroids spread by their
+	 * index (the seeding already spreads them).
+	 *
+	 * @param values
+	 *            compacted values of each centroid
+	 * @return group of each centroid, numbered from 0 without empty groups
+	 */
+	static int[] groupCentroids(float[][] values) {
+		int k = values.length;
+		int nGroups = Math.max(1, k / CENTROIDS_PER_GROUP);
+		int[] groups = new int[k];
+		if (nGroups == 1) {
+			return groups;
+		}
+
+		float[][] centers = new float[nGroups][];
+		for (int g = 0; g < nGroups; g++) {
+			centers[g] = values[(int) ((long) g * k / nGroups)].clone();
+		}
+		for (int iteration = 0;; iteration++) {
+			for (int c = 0; c < k; c++) {
+				double minimumDistance = Double.MAX_VALUE;
+				for (int g = 0; g < nGroups; g++) {
+					double distance = Distance.squared(values[c], centers[g]);
+					if (minimumDistance > distance) {
+						minimumDistance = distance;
+						groups[c] = g;
+					}
+				}
+			}
+			if (iteration == GROUPING_ITERATIONS - 1) {
+				break;
+			}
+
+			// Mean of each group (empty groups keep their center)
+			double[][] sums = new double[nGroups][values[0].length];
+			int[] counts = new int[nGroups];
+			for (int c = 0; c < k; c++) {
+				counts[groups[c]]++;
+				for (int i = 0; i < values[c].length; i++) {
+					sums[groups[c]][i] += values[c][i];
+				}
+			}
+			for (int g = 0; g < nGroups; g++) {
+				for (int i = 0; counts[g] > 0 && i < centers[g].length; i++) {
+					centers[g][i] = (float) (sums[g][i] / counts[g]);
+				}
+			}
+		}
+
+		// Number the groups that got centroids consecutively
+		int[] numbers = new int[nGroups];
+		Arrays.fill(numbers, -1);
+		int n = 0;
+		for (int c = 0; c < k; c++) {
+			if (numbers[groups[c]] == -1) {
+				numbers[groups[c]] = n++;
+			}
+			groups[c] = numbers[groups[c]];
+		}
+		return groups;
+	}
+
+	@Override
+	protected void compute() {
+		if (lower == null) {
+			lower = new float[(to - from) * centroids.nGroups];
+			bounds = new double[centroids.nGroups];
+			seconds = new double[centroids.nGroups];
+		}
+		super.compute();
+		hasBounds = true;
+	}
+
+	@Override
+	int assign(int row, float[] values) {
+		int i = row - from;
+		if (!hasBounds || centroids.drift == null) {
+			return assignAll(i, values);
+		}
+
+		// Move the bounds with the centroids
+		int nGroups = centroids.nGroups;
+		int base = i * nGroups;
+		double[] drift = centroids.drift;
+		int closest = labels[row];
+		double u = upper[i] + drift[closest];
+		double globalLower = Double.MAX_VALUE;
+		for (int g = 0; g < nGroups; g++) {
+			bounds[g] = lower[base + g] - centroids.groupDrift[g];
+			globalLower = Math.min(globalLower, bounds[g]);
+		}
+		if (u < globalLower) {
+			return keep(i, closest, u);
+		}
+
+		// Tighten the upper bound
+		double closestDistance = squaredDistance(values,
+				centroids.values[closest]);
+		u = Math.sqrt(closestDistance);
+		if (u < globalLower) {
+			return keep(i, closest, u);
+		}
+
+		// Check the groups that can have a closer centroid
+		int[] groups = centroids.groups;
+		int[] members = centroids.members;
+		int previous = closest;
+		double previousDistance = u;
+		for (int g = 0; g < nGroups; g++) {
+			if (u < bounds[g]) {
+				continue;
+			}
+			double previousBound = lower[base + g];
+			double bound = Double.MAX_VALUE;
+			int end = centroids.groupStarts[g + 1];
+			for (int j = centroids.groupStarts[g]; j < end; j++) {
+				int c = members[j];
+				if (c == previous) {
+					continue;
+				}
+				double centroidBound = previousBound - drift[c];
+				if (u < centroidBound) {
+					bound = Math.min(bound, centroidBound);
+					continue;
+				}
+				double distance = squaredDistance(values, centroids.values[c]);
+				if (distance < closestDistance
+						|| (distance == closestDistance && c < closest)) {
+					// The replaced centroid bounds its group
+					if (closest != previous) {
+						if (groups[closest] == g) {
+							bound = Math.min(bound, u);
+						} else {
+							bounds[groups[closest]] = Math
+									.min(bounds[groups[closest]], u);
+						}
+					}
+					closest = c;
+					closestDistance = distance;
+					u = Math.sqrt(distance);
+				} else {
+					bound = Math.min(bound, Math.sqrt(distance));
+				}
+			}
+			bounds[g] = bound;
+		}
+		if (closest != previous) {
+			int g = groups[previous];
+			bounds[g] = Math.min(bounds[g], previousDistance);
+		}
+		return keep(i, closest, u);
+	}
+
+	/**
+	 * Store the bounds of a row.
+	 *
+	 * @param i
+	 *            position of the row in the partition
+	 * @param closest
+	 *            index of the closest centroid
+	 * @param u
+	 *            upper bound of the distance to the closest centroid
+	 * @return index of the closest centroid
+	 */
+	private int keep(int i, int closest, double u) {
+		int base = i * centroids.nGroups;
+		upper[i] = up(u);
+		for (int g = 0; g < centroids.nGroups; g++) {
+			lower[base + g] = down(bounds[g]);
+		}
+		return closest;
+	}
+
+	/**
+	 * Find the closest centroid calculating all the distances and set the
+	 * bounds of the row.
+	 *
+	 * @param i
+	 *            position of the row in the partition
+	 * @param values
+	 *            values of the row
+	 * @return index of the closest centroid (the first one if there are ties)
+	 */
+	private int assignAll(int i, float[] values) {
+		float[][] centroids = this.centroids.values;
+		int[] groups = this.centroids.groups;
+		Arrays.fill(bounds, Double.MAX_VALUE);
+		Arrays.fill(seconds, Double.MAX_VALUE);
+		int closest = 0;
+		double minimumDistance = Double.MAX_VALUE;
+		for (int c = 0; c < centroids.length; c++) {
+			double distance = squaredDistance(values, centroids[c]);
+			int g = groups[c];
+			if (bounds[g] > distance) {
+				seconds[g] = bounds[g];
+				bounds[g] = distance;
+			} else if (seconds[g] > distance) {
+				seconds[g] = distance;
+			}
+			if (minimumDistance > distance) {
+				minimumDistance = distance;
+				closest = c;
+			}
+		}
+
+		// The closest centroid doesn't bound its group
+		bounds[groups[closest]] = seconds[groups[closest]];
+		for (int g = 0; g < bounds.length; g++) {
+			bounds[g] = Math.sqrt(bounds[g]);
+		}
+		return keep(i, closest, Math.sqrt(minimumDistance));
+	}
+}
@@ -0,0 +1,115 @@
+package data;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Range of complete lines of a CSV file that is parsed in parallel with the
+ * other chunks of the file. Each chunk keeps its own rows, missed values and
+ * partial figures, which are merged in order into the data set afterwards.
+ */
+class CsvChunk extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	/** Channel of the file */
+	private final FileChannel channel;
+	/** Position of the file where the chunk starts */
+	private final long start;
+	/** Position of the file where the chunk ends */
+	private final long end;
+	/** Number of features of each row */
+	private final int nFeatures;
+	/** Separator of the values */
+	private final char separator;
+	/** Quote character */
+	private final char quote;
+
+	/** Rows of the chunk */
+	final HeapStore store;
+	/** Missed values of the rows */
+	final MissingMask missing;
+	/** Statistics of the values (not missed) of each feature of all rows */
+	final FeatureStats stats;
+	/** Number of rows of the chunk */
+	int nRows;
+	/** Row with a wrong number of values (-1 if all are right) */
+	int inconsistentRow;
+	/** Error at parsing the chunk */
+	Exception error;
+
+	/**
+	 * Create a new chunk.
+	 *
+	 * @param channel
+	 *            channel of the file
+	 * @param start
+	 *            position where the first line of the chunk starts
+	 * @param end
+	 *            position where the chunk ends
+	 * @param nFeatures
+	 *            number of features of each row
+	 * @param separator
+	 *            separator of the values
+	 * @param quote
+	 *            quote character
+	 */
+	CsvChunk(FileChannel channel, long start, long end, int nFeatures,
+			char separator, char quote) {
+		this.channel = channel;
+		this.start = start;
+		this.end = end;
+		this.nFeatures = nFeatures;
+		this.separator = separator;
+		this.quote = quote;
+		this.store = new HeapStore(nFeatures);
+		this.missing = new MissingMask(nFeatures);
+		this.stats = new FeatureStats(nFeatures);
+		this.inconsistentRow = -1;
+	}
+
+	@Override
+	protected void compute() {
+		try {
+			parse();
+		} catch (IOException e) {
+			error = e;
+		} catch (NumberFormatException e) {
+			error = e;
+		}
+	}
+
+	/**
+	 * Parse the lines of the chunk.
+	 *
+	 * @throws IOException
+	 *             error at reading the file
+	 * @throws NumberFormatException
+	 *             some value isn't a number
+	 */
+	private void parse() throws IOException, NumberFormatException {
+		MappedCsvReader reader = new MappedCsvReader(channel, start, end,
+				separator, quote);
+		try {
+			float[] features = new float[nFeatures];
+			int[] missedIndexes = new int[nFeatures];
+			int nValues;
+			while ((nValues = reader.next(features)) != -1) {
+				if (nValues != nFeatures) {
+					inconsistentRow = nRows;
+					return;
+				}
+
+				for (int i = 0; i < reader.nMissed(); i++) {
+					missing.set(nRows, reader.getMissed(i));
+					missedIndexes[i] = reader.getMissed(i);
+				}
+				stats.add(features, missedIndexes, reader.nMissed());
+				store.addRow(features);
+				nRows++;
+			}
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -2,36 +2,44 @@ package data;
 
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import au.com.bytecode.opencsv.CSVReader;
-import au.com.bytecode.opencsv.CSVWriter;
 
 /**
  * A dataset is a collection of data points. This class performs all the
- * operation related with the data set. It parse the CSV file, create Point
- * objets, standarize/destandarize points, etc.
+ * operation related with the data set. It parse the CSV file, stores the
+ * values of the points, standarize/destandarize points, etc.
  */
 public class DataSet {
-	/** Points of the data set */
-	private List<Point> points;
+	/** Values of the points of the data set */
+	private Store store;
+	/** Missed values of the points */
+	private MissingMask missing;
 	/** Mean of the data set */
 	private float[] mean;
 	/** Standard deviation of the data set */
 	private float[] standardDeviation;
+	/**
+	 * Divisor used to standardize each feature: its standard deviation or 1
+	 * for constant features
+	 */
+	private float[] scale;
+	/** If the values are read standardized */
+	private boolean standardized;
 	/** Array to indicate which features have missed values */
 	private boolean[] incompleteFeature;
+	/** Features without missed values */
+	private int[] completeFeatures;
 	/** Names of each feature */
 	private String[] headers;
 	/**
@@ -40,6 +48,28 @@ public class DataSet {
 	 */
 	private String[] types;
 
+	/** Statistics of the values (not missed) of each feature */
+	private FeatureStats stats;
+	/** If the values are kept out of the heap */
+	private boolean offHeap;
+	/** Only one row out of this number of rows is kept (1 to keep all) */
+	private int sampleStep;
+	/** Number of rows of the file, kept or not */
+	private long nRowsRead;
+	/** Number of missed values */
+	private long nMissedValues;
+
+	/** Separator of the values of the CSV file */
+	static final char SEPARATOR = ',';
+	/** Escape character in the CSV file */
+	static final char ESCAPE_CHAR = '"';
+	/** First line to read (starting from 0) */
+	private static final int FIRST_LINE = 0;
+	/** Minimum size of the chunks of the file parsed in parallel (16 MB) */
+	private static final long MIN_CHUNK_SIZE = 16L << 20;
+	/** Maximum size of the chunks of the file parsed in parallel (32 MB) */
+	private static final long MAX_CHUNK_SIZE = 32L << 20;
+
 	/** Logger */
 	private static final Logger logger = LoggerFactory.getLogger(DataSet.class);
 
@@ -55,17 +85,205 @@ public class DataSet {
 	 */
 	public DataSet(File incompleteDS)
 			throws NumberFormatException, IOException {
-		points = new ArrayList<Point>();
-		processData(incompleteDS);
+		processData(incompleteDS, Ingestion.MAPPED, Storage.AUTO, 1);
+	}
+
+	/**
+	 * Create a new data set reading the CSV file in a specific way.
+	 * 
+	 * @param incompleteDS
+	 *            CSV file with the data set with missed values
+	 * @param ingestion
+	 *            way of reading the CSV file
+	 * @throws NumberFormatException
+	 *             format of the data set not valid
+	 * @throws IOException
+	 *             error at parsing CSV files
+	 */
+	public DataSet(File incompleteDS, Ingestion ingestion)
+			throws NumberFormatException, IOException {
+		processData(incompleteDS, ingestion, Storage.AUTO, 1);
+	}
+
+	/**
+	 * Create a new data set reading the CSV file in a specific way and keeping
+	 * the values in a specific place.
+	 * 
+	 * @param incompleteDS
+	 *            CSV file with the data set with missed values
+	 * @param ingestion
+	 *            way of reading the CSV file
+	 * @param storage
+	 *            where to keep the values
+	 * @throws NumberFormatException
+	 *             format of the data set not valid
+	 * @throws IOException
+	 *             error at parsing CSV files
+	 */
+	public DataSet(File incompleteDS, Ingestion ingestion, Storage storage)
+			throws NumberFormatException, IOException {
+		processData(incompleteDS, ingestion, storage, 1);
+	}
+
+	/**
+	 * Create a new data set with a sample of the rows of the CSV file: one row
+	 * out of every sampleStep rows. Statistics, and so the mean, standard
+	 * deviation and features with missed values, are still calculated with all
+	 * the rows of the file. The cache is not used for samples.
+	 * 
+	 * @param incompleteDS
+	 *            CSV file with the data set with missed values
+	 * @param ingestion
+	 *            way of reading the CSV file
+	 * @param storage
+	 *            where to keep the values
+	 * @param sampleStep
+	 *            number of rows read for each row kept (1 to keep all)
+	 * @throws NumberFormatException
+	 *             format of the data set not valid
+	 * @throws IOException
+	 *             error at parsing CSV files
+	 */
+	public DataSet(File incompleteDS, Ingestion ingestion, Storage storage,
+			int sampleStep) throws NumberFormatException, IOException {
+		if (sampleStep < 1) {
+			throw new IllegalArgumentException(
+					"Sample step must be positive: " + sampleStep);
+		}
+		processData(incompleteDS, ingestion, storage, sampleStep);
+	}
+
+	/**
+	 * Number of points.
+	 * 
+	 * @return number of points of the data set
+	 */
+	public int nPoints() {
+		return store.nRows();
+	}
+
+	/**
+	 * Get a point. Depending on the storage, the point is a view of the values
+	 * of the data set or a copy of them, so values must be changed with
+	 * {@link #setValue(int, int, float)}.
+	 * 
+	 * @param p
+	 *            index of the point (starting from 0)
+	 * @return point
+	 */
+	public Point getPoint(int p) {
+		Point point;
+		if (standardized) {
+			float[] values = new float[nFeatures()];
+			getValues(p, values);
+			point = new Point(values);
+		} else {
+			point = store.point(p);
+		}
+		point.setMissing(missing, p);
+		return point;
+	}
+
+	/**
+	 * Copy the values of the features of a point to an array. Cheaper than
+	 * {@link #getPoint(int)} when the same array is used for many points.
+	 * 
+	 * @param p
+	 *            index of the point
+	 * @param values
+	 *            array where to copy the values (one per feature)
+	 */
+	public void getValues(int p, float[] values) {
+		for (int f = 0; f < values.length; f++) {
+			values[f] = store.get(p, f);
+		}
+		if (standardized) {
+			standardize(values);
+		}
+	}
+
+	/**
+	 * Copy the values of some features of a point to an array.
+	 * 
+	 * @param p
+	 *            index of the point
+	 * @param features
+	 *            features to copy
+	 * @param values
+	 *            array where to copy the values (one per feature to copy)
+	 */
+	public void getValues(int p, int[] features, float[] values) {
+		if (standardized) {
+			for (int i = 0; i < features.length; i++) {
+				int f = features[i];
+				values[i] = (store.get(p, f) - mean[f]) / scale[f];
+			}
+		} else {
+			for (int i = 0; i < features.length; i++) {
+				values[i] = store.get(p, features[i]);
+			}
+		}
+	}
+
+	/**
+	 * Get the value of a feature of a point.
+	 * 
+	 * @param p
+	 *            index of the point
+	 * @param f
+	 *            feature
+	 * @return value of the feature
+	 */
+	public float getValue(int p, int f) {
+		float value = store.get(p, f);
+		return standardized ? (value - mean[f]) / scale[f] : value;
+	}
+
+	/**
+	 * Set the value of a feature of a point.
+	 * 
+	 * @param p
+	 *            index of the point
+	 * @param f
+	 *            feature
+	 * @param value
+	 *            new value of the feature
+	 */
+	public void setValue(int p, int f, float value) {
+		store.set(p, f, standardized ? mean[f] + value * scale[f] : value);
+	}
+
+	/**
+	 * Answer if a point has some missed value.
+	 * 
+	 * @param p
+	 *            index of the point
+	 * @return true if some feature of the point has missed value
+	 */
+	public boolean hasMissedFeatures(int p) {
+		return missing.hasMissed(p);
+	}
+
+	/**
+	 * Get the missed values of the data set.
+	 * 
+	 * @return mask with the missed values of all the points
+	 */
+	public MissingMask getMissingMask() {
+		return missing;
 	}
 
 	/**
-	 * Get points.
+	 * Return if the feature f of a point has a value or not.
 	 * 
-	 * @return list of data set's points
+	 * @param p
+	 *            index of the point
+	 * @param f
+	 *            feature
+	 * @return true if missed value false if not
 	 */
-	public List<Point> getPoints() {
-		return points;
+	public boolean isMissedFeature(int p, int f) {
+		return missing.isMissed(p, f);
 	}
 
 	/**
@@ -88,6 +306,25 @@ public class DataSet {
 		return incompleteFeature[f];
 	}
 
+	/**
+	 * Get the features without missed values, the ones used to measure
+	 * distances.
+	 * 
+	 * @return features in increasing order
+	 */
+	public int[] getCompleteFeatures() {
+		return completeFeatures;
+	}
+
+	/**
+	 * Get the statistics of the features.
+	 * 
+	 * @return mean and variance of the values (not missed) of each feature
+	 */
+	public FeatureStats getStats() {
+		return stats;
+	}
+
 	/**
 	 * Get type of a feature.
 	 * 
@@ -100,27 +337,128 @@ public class DataSet {
 	}
 
 	/**
-	 * Parses the data set and creates Point objetcs with the features given. It
-	 * also register the missed values and calculates the mean and standard
+	 * Parses the data set and stores the values of the features of each point.
+	 * It also register the missed values and calculates the mean and standard
 	 * deviation for each feature.
 	 * 
 	 * @param incompleteDS
 	 *            data set in CSV format
+	 * @param ingestion
+	 *            way of reading the CSV file
+	 * @param storage
+	 *            where to keep the values
+	 * @param sampleStep
+	 *            number of rows read for each row kept
 	 * @throws NumberFormatException
 	 * @throws IOException
 	 */
-	private void processData(File incompleteDS)
+	private void processData(File incompleteDS, Ingestion ingestion,
+			Storage storage, int sampleStep)
 			throws NumberFormatException, IOException {
 		System.out.println("> Processing data set file...");
 
-		String[] point; // Array of strings with the features of a point
-		float[] sum; // Sum of all the values of each feature
-		long num = 0; // Number of points processed
-		int nMissedValues = 0; // Number of missed values
+		// The cache has all the rows, so it's not used for samples
+		this.sampleStep = sampleStep;
+		if (sampleStep > 1 && ingestion == Ingestion.CACHED) {
+			ingestion = Ingestion.MAPPED;
+		}
+
+		// The size of the CSV file is an upper bound of the size of the values
+		offHeap = storage == Storage.OFF_HEAP || (storage == Storage.AUTO
+				&& incompleteDS.length() > Runtime.getRuntime().maxMemory() / 2);
+		if (offHeap) {
+			System.out.println("      Values kept out of the heap");
+		}
+
+		boolean cached = false; // If the data set was read from the cache
+		if (ingestion == Ingestion.CACHED
+				&& DataSetCache.isValid(incompleteDS)) {
+			try {
+				DataSetCache.read(this, incompleteDS, offHeap);
+				cached = true;
+				System.out.println("      Read from cache");
+			} catch (IOException e) {
+				logger.warn("Cache not read: " + e.getMessage());
+			}
+		}
+		if (cached) {
+			initializeFigures();
+			nRowsRead = nPoints();
+		} else if (ingestion == Ingestion.CSV_READER) {
+			readCsv(incompleteDS);
+		} else {
+			readMapped(incompleteDS);
+		}
+		long num = nRowsRead; // Number of points processed
+		if (sampleStep > 1) {
+			System.out.println("      Sample of " + nPoints() + " points out of "
+					+ num);
+		}
 
-		final char SEPARATOR = ','; // Separator of the values of the CSV file
-		final char ESCAPE_CHAR = '"'; // Escape character in the CSV file
-		final int FIRST_LINE = 0; // First line to read (starting from 0)
+		// Features with missed values are the ones with less values than
+		// points
+		int nComplete = 0;
+		for (int i = 0; i < headers.length; i++) {
+			incompleteFeature[i] = stats.getCount(i) < num;
+			nMissedValues += num - stats.getCount(i);
+			nComplete += incompleteFeature[i] ? 0 : 1;
+		}
+		completeFeatures = new int[nComplete];
+		for (int i = 0, j = 0; i < headers.length; i++) {
+			if (!incompleteFeature[i]) {
+				completeFeatures[j++] = i;
+			}
+		}
+
+		// Show figures about missed values
+		System.out.println("      Missed values: " + nMissedValues);
+		List<String> missedFeatures = new ArrayList<String>();
+		for (int i = 0; i < incompleteFeature.length; i++) {
+			if (incompleteFeature[i]) {
+				missedFeatures.add(headers[i]);
+			}
+		}
+		System.out.println("      In " + missedFeatures.size()
+				+ " features out of " + incompleteFeature.length + ":");
+		System.out.println("      " + missedFeatures.toString());
+
+		// Mean and standard deviation were calculated while parsing
+		for (int i = 0; i < headers.length; i++) {
+			mean[i] = (float) stats.getMean(i);
+			standardDeviation[i] = (float) stats.getStandardDeviation(i);
+			scale[i] = standardDeviation[i] > 0 ? standardDeviation[i] : 1;
+		}
+
+		logger.debug("Data set processed");
+		logger.debug("Mean:\n" + Arrays.toString(mean));
+		logger.debug(
+				"Standar deviation:\n" + Arrays.toString(standardDeviation));
+		logger.debug("Features with missed values\n"
+				+ Arrays.toString(incompleteFeature));
+		for (int i = 0; i < 10 && i < nPoints(); i++) { // Show 10 first point
+			logger.debug(getPoint(i).toString());
+		}
+
+		if (ingestion == Ingestion.CACHED && !cached) {
+			try {
+				DataSetCache.write(this, incompleteDS);
+			} catch (IOException e) {
+				System.out.println("      Cache not written: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Reads the data set with opencsv, line by line.
+	 * 
+	 * @param incompleteDS
+	 *            data set in CSV format
+	 * @throws NumberFormatException
+	 * @throws IOException
+	 */
+	private void readCsv(File incompleteDS)
+			throws NumberFormatException, IOException {
+		String[] point; // Array of strings with the features of a point
 
 		// Set up CSV reader
 		CSVReader reader = new CSVReader(new FileReader(incompleteDS),
@@ -131,86 +469,230 @@ public class DataSet {
 			headers = reader.readNext();
 			// Read types
 			types = reader.readNext();
+			initialize();
 
-			// Arrays
-			sum = new float[headers.length];
-			mean = new float[headers.length];
-			standardDeviation = new float[headers.length];
-			incompleteFeature = new boolean[headers.length];
-			Arrays.fill(sum, 0F);
-			Arrays.fill(incompleteFeature, false);
+			float[] features = new float[headers.length];
+			int[] missed = new int[headers.length];
 
 			// Parse CSV dataset
 			while ((point = reader.readNext()) != null) {
 				if (point.length != headers.length) {
 					throw new IOException(
-							"Inconsistent data set. Row " + num + 3);
+							"Inconsistent data set. Row " + (nRowsRead + 3));
 				}
 
-				float[] features = new float[point.length];
-				Set<Integer> missedFeatures = new HashSet<Integer>(
-						point.length / 2);
-
 				// Process each feature of the point
+				int nMissed = 0;
 				for (int f = 0; f < point.length; f++) {
 					if (point[f].equals("")) { // Missed value
-						incompleteFeature[f] = true;
-						missedFeatures.add(f);
+						missed[nMissed++] = f;
 						features[f] = 0;
-						nMissedValues++;
 					} else {
 						features[f] = Float.parseFloat(point[f]);
-						sum[f] += features[f];
 					}
 				}
-
-				Point p = missedFeatures.isEmpty() ? new Point(features)
-						: new Point(features, missedFeatures);
-				points.add(p);
-				num++;
+				if (nRowsRead++ % sampleStep == 0) {
+					addPoint(features, missed, nMissed);
+				} else {
+					stats.add(features, missed, nMissed);
+				}
 			}
 		} finally {
 			reader.close();
 		}
+	}
 
-		// Show figures about missed values
-		System.out.println("      Missed values: " + nMissedValues);
-		List<String> missedFeatures = new ArrayList<String>();
-		for (int i = 0; i < incompleteFeature.length; i++) {
-			if (incompleteFeature[i]) {
-				missedFeatures.add(headers[i]);
+	/**
+	 * Reads the data set mapping the file in memory and parsing the values
+	 * directly from its bytes. The file is split in chunks of complete lines
+	 * that are parsed in parallel and merged in order.
+	 * 
+	 * @param incompleteDS
+	 *            data set in CSV format
+	 * @throws NumberFormatException
+	 * @throws IOException
+	 */
+	private void readMapped(File incompleteDS)
+			throws NumberFormatException, IOException {
+		FileChannel channel = new RandomAccessFile(incompleteDS, "r")
+				.getChannel();
+
+		try {
+			MappedCsvReader reader = new MappedCsvReader(channel, 0, -1,
+					SEPARATOR, ESCAPE_CHAR);
+			// Read header
+			headers = reader.readLine();
+			// Read types
+			types = reader.readLine();
+			long dataStart = reader.position();
+			reader.close();
+			if (headers == null || types == null) {
+				throw new IOException("Inconsistent data set. No headers");
+			}
+			initialize();
+
+			// Split the file in chunks of complete lines
+			long size = channel.size();
+			int parallelism = Runtime.getRuntime().availableProcessors();
+			int nChunks = (int) Math.max(1,
+					Math.max((size - dataStart) / MAX_CHUNK_SIZE,
+							Math.min(4 * parallelism,
+									(size - dataStart) / MIN_CHUNK_SIZE)));
+			List<CsvChunk> chunks = new ArrayList<CsvChunk>(nChunks);
+			long chunkStart = dataStart;
+			for (int i = 1; i <= nChunks; i++) {
+				long chunkEnd = i == nChunks ? size
+						: MappedCsvReader.lineStart(channel, dataStart
+								+ (size - dataStart) * i / nChunks);
+				if (chunkEnd > chunkStart) {
+					chunks.add(new CsvChunk(channel, chunkStart, chunkEnd,
+							headers.length, SEPARATOR, ESCAPE_CHAR));
+				}
+				chunkStart = Math.max(chunkStart, chunkEnd);
 			}
+
+			// Parse chunks in parallel by waves, so only the chunks of a wave
+			// are in the heap at the same time, and merge them in order
+			int wave = 4 * parallelism;
+			for (int from = 0; from < chunks.size(); from += wave) {
+				List<CsvChunk> chunksOfWave = chunks.subList(from,
+						Math.min(from + wave, chunks.size()));
+				ForkJoinTask.invokeAll(chunksOfWave);
+				for (int i = 0; i < chunksOfWave.size(); i++) {
+					addChunk(chunksOfWave.get(i));
+					chunksOfWave.set(i, null);
+				}
+			}
+		} finally {
+			channel.close();
 		}
-		System.out.println("      In " + missedFeatures.size()
-				+ " features out of " + incompleteFeature.length + ":");
-		System.out.println("      " + missedFeatures.toString());
+	}
 
-		// Calculate mean
-		for (int i = 0; i < sum.length; i++) {
-			mean[i] = sum[i] / num;
+	/**
+	 * Add the points parsed in a chunk of the file to the data set. When
+	 * sampling, the rows are kept by their index in the whole file, so the
+	 * sample doesn't depend on how the file was split in chunks.
+	 * 
+	 * @param chunk
+	 *            chunk already parsed
+	 * @throws NumberFormatException
+	 * @throws IOException
+	 */
+	private void addChunk(CsvChunk chunk)
+			throws NumberFormatException, IOException {
+		if (chunk.error instanceof IOException) {
+			throw (IOException) chunk.error;
+		} else if (chunk.error != null) {
+			throw (NumberFormatException) chunk.error;
+		}
+		if (chunk.inconsistentRow != -1) {
+			throw new IOException("Inconsistent data set. Row "
+					+ (nRowsRead + chunk.inconsistentRow + 3));
 		}
 
-		// Calculate standard deviation
-		Arrays.fill(sum, 0F);
-		for (Point p : points) {
-			float[] features = p.getValues();
-			for (int i = 0; i < features.length; i++) {
-				sum[i] += Math.pow(features[i] - mean[i], 2);
+		if (sampleStep == 1) {
+			missing.addAll(chunk.missing, nPoints());
+			store.addAll(chunk.store);
+		} else {
+			float[] features = new float[headers.length];
+			int first = (int) ((sampleStep - nRowsRead % sampleStep)
+					% sampleStep);
+			for (int row = first; row < chunk.nRows; row += sampleStep) {
+				for (int f = 0; f < features.length; f++) {
+					features[f] = chunk.store.get(row, f);
+					if (chunk.missing.isMissed(row, f)) {
+						missing.set(nPoints(), f);
+					}
+				}
+				store.addRow(features);
 			}
 		}
-		for (int i = 0; i < sum.length; i++) {
-			standardDeviation[i] = (float) Math.sqrt(sum[i] / num);
-		}
+		stats.merge(chunk.stats);
+		nRowsRead += chunk.nRows;
+	}
 
-		logger.debug("Data set processed");
-		logger.debug("Mean:\n" + Arrays.toString(mean));
-		logger.debug(
-				"Standar deviation:\n" + Arrays.toString(standardDeviation));
-		logger.debug("Features with missed values\n"
-				+ Arrays.toString(incompleteFeature));
-		for (int i = 0; i < 10 && i < points.size(); i++) { // Show 10 first point
-			logger.debug(points.get(i).toString());
+	/**
+	 * Create the arrays of the data set once the headers are read.
+	 * 
+	 * @throws IOException
+	 *             error at creating the store
+	 */
+	private void initialize() throws IOException {
+		store = offHeap ? new OffHeapStore(headers.length)
+				: new HeapStore(headers.length);
+		missing = new MissingMask(headers.length);
+		stats = new FeatureStats(headers.length);
+		initializeFigures();
+	}
+
+	/**
+	 * Create the arrays of the figures calculated from the statistics.
+	 */
+	private void initializeFigures() {
+		mean = new float[headers.length];
+		standardDeviation = new float[headers.length];
+		scale = new float[headers.length];
+		incompleteFeature = new boolean[headers.length];
+		nMissedValues = 0;
+	}
+
+	/**
+	 * Set the data of the data set read from a cache.
+	 * 
+	 * @param headers
+	 *            names of each feature
+	 * @param types
+	 *            type of each feature
+	 * @param store
+	 *            values of the points
+	 * @param missing
+	 *            missed values of the points
+	 * @param stats
+	 *            statistics of the features
+	 */
+	void restore(String[] headers, String[] types, Store store,
+			MissingMask missing, FeatureStats stats) {
+		this.headers = headers;
+		this.types = types;
+		this.store = store;
+		this.missing = missing;
+		this.stats = stats;
+	}
+
+	/**
+	 * Get the names of the features.
+	 * 
+	 * @return array with the name of each feature
+	 */
+	String[] getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Get the types of the features.
+	 * 
+	 * @return array with the type of each feature
+	 */
+	String[] getTypes() {
+		return types;
+	}
+
+	/**
+	 * Add a new point to the data set.
+	 * 
+	 * @param features
+	 *            values of the features (missed values as 0)
+	 * @param missed
+	 *            features with missed values in ascending order
+	 * @param nMissed
+	 *            number of features with missed values
+	 */
+	private void addPoint(float[] features, int[] missed, int nMissed) {
+		for (int i = 0; i < nMissed; i++) {
+			missing.set(nPoints(), missed[i]);
 		}
+		stats.add(features, missed, nMissed);
+		store.addRow(features);
 	}
 
 	/**
@@ -224,51 +706,63 @@ public class DataSet {
 	public void exportDataSet(File output) throws IOException {
 		System.out.println("> Exporting data set...");
 
-		final char SEPARATOR = ','; // Separator of the values of the CSV file
-		final char ESCAPE_CHAR = '"'; // Escape character in the CSV file
-		CSVWriter writer = new CSVWriter(new FileWriter(output + "/output.csv"),
-				SEPARATOR, ESCAPE_CHAR);
+		RowWriter writer = new RowWriter(new File(output, "output.csv"),
+				headers, types);
 
 		try {
-			writer.writeNext(headers);
-			writer.writeNext(types);
-			for (Point p : points) {
-				// Convert array of values (floats) to array of strings and
-				// write it
-				String[] line = new String[this.nFeatures()];
-				for (int f = 0; f < this.nFeatures(); f++) {
-					if (this.getType(f).equals("i")) {
-						int n = (int) Math.round(p.getValue(f));
-						line[f] = Integer.toString(n);
-					} else {
-						line[f] = Float.toString(p.getValue(f));
-					}
+			float[] values = new float[nFeatures()];
+			for (int i = 0; i < nPoints(); i++) {
+				for (int f = 0; f < values.length; f++) {
+					values[f] = store.get(i, f);
 				}
-				writer.writeNext(line);
+				writer.write(values);
 			}
 		} finally {
 			writer.close();
 		}
 	}
 
+	/**
+	 * Release the values of the data set. Needed to free the temporary file of
+	 * the values kept out of the heap.
+	 * 
+	 * @throws IOException
+	 *             error at releasing the values
+	 */
+	public void close() throws IOException {
+		store.close();
+	}
+
+	/**
+	 * Standarize the values of a row that isn't in the data set with the mean
+	 * and standard deviation of the data set.
+	 * 
+	 * @param values
+	 *            values of the features of the row (they are replaced)
+	 */
+	public void standardize(float[] values) {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (values[i] - mean[i]) / scale[i];
+		}
+	}
+
 	/**
 	 * Standarize the values of the features of all points. That is making the
 	 * valuess of each feature in the data have zero-mean and unit-variance. 
 	 * z = (x - μ) / σ
+	 * <p>
+	 * Values are not changed: from now on they are standardized as they are
+	 * read (and destandardized as they are set), so the original values are
+	 * kept exactly and no pass over the data set is needed.
 	 */
 	public void standardizePoints() {
 		System.out.println("> Standarizing points...");
 
-		for (Point p : points) {
-			float[] features = p.getValues();
-			for (int i = 0; i < features.length; i++) {
-				features[i] = (features[i] - mean[i]) / standardDeviation[i];
-			}
-		}
+		standardized = true;
 
 		logger.debug("Points standarized");
-		for (int i = 0; i < 10 && i < points.size(); i++) { // Show 10 first point
-			logger.debug(points.get(i).toString());
+		for (int i = 0; i < 10 && i < nPoints(); i++) { // Show 10 first point
+			logger.debug(getPoint(i).toString());
 		}
 	}
 
@@ -277,38 +771,18 @@ public class DataSet {
 	 * valuess of each feature in the data have mean μ and a standardDeviation
 	 * σ. 
 	 * x = μ + zσ
+	 * <p>
+	 * As values are standardized when they are read, the original values are
+	 * just read again, without truncation errors.
 	 */
 	public void destandardizePoints() {
 		System.out.println("> Destandarizing points...");
 
-		for (Point p : points) {
-			float[] features = p.getValues();
-			for (int i = 0; i < features.length; i++) {
-				// Round to 6 decimal places to remove truncation errors
-				features[i] = round(
-						mean[i] + features[i] * standardDeviation[i], 6);
-			}
-		}
+		standardized = false;
 
 		logger.debug("Points destandarized");
-		for (int i = 0; i < 10 && i < points.size(); i++) { // Show 10 first point
-			logger.debug(points.get(i).toString());
+		for (int i = 0; i < 10 && i < nPoints(); i++) { // Show 10 first point
+			logger.debug(getPoint(i).toString());
 		}
 	}
-
-	/**
-	 * Rounds a decimal number to a specific number of decimal places using the
-	 * mode half down.
-	 * 
-	 * @param number
-	 *            number to round
-	 * @param nDecimals
-	 *            specified number of decimal places
-	 * @return rounded number
-	 */
-	private float round(float number, int nDecimals) {
-		BigDecimal bd = new BigDecimal(number);
-		bd = bd.setScale(nDecimals, RoundingMode.HALF_DOWN);
-		return bd.floatValue();
-	}
 }
\ No newline at end of file
@@ -0,0 +1,387 @@
+package data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary copy of a parsed data set, so the CSV file doesn't have to be parsed
+ * again each time the same data set is used. The cache is stored next to the
+ * CSV file and it is read by mapping it in memory. It remembers the size and
+ * the modification date of the CSV file, so it is ignored if the CSV changes.
+ * <p>
+ * Format (little endian): magic, version, size and date of the CSV file,
+ * number of features and rows, position of the values, headers, types,
+ * statistics of each feature, bitmaps of missed values and finally the values
+ * of the rows one after the other (the same layout of the store).
+ */
+final class DataSetCache {
+	/** Magic number of the cache files ("CFMV") */
+	private static final int MAGIC = 0x43464D56;
+	/** Version of the format */
+	private static final int VERSION = 1;
+	/** Size of the fixed part of the header */
+	private static final int HEADER_SIZE = 40;
+	/** Extension of the cache files */
+	private static final String EXTENSION = ".cache";
+	/** Size of the buffer used to write */
+	private static final int BUFFER_SIZE = 1 << 22;
+	/** Maximum number of bytes mapped at the same time (1 GB) */
+	private static final int WINDOW = 1 << 30;
+
+	private DataSetCache() {
+	}
+
+	/**
+	 * Get the cache file of a CSV file.
+	 *
+	 * @param source
+	 *            CSV file
+	 * @return cache file
+	 */
+	static File cacheFile(File source) {
+		return new File(source.getPath() + EXTENSION);
+	}
+
+	/**
+	 * Answer if a CSV file has a valid cache.
+	 *
+	 * @param source
+	 *            CSV file
+	 * @return true if the cache exists and it was created from the current
+	 *         version of the CSV file
+	 */
+	static boolean isValid(File source) {
+		File cache = cacheFile(source);
+		if (!cache.isFile() || cache.length() < HEADER_SIZE) {
+			return false;
+		}
+		try {
+			RandomAccessFile file = new RandomAccessFile(cache, "r");
+			try {
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+						.order(ByteOrder.LITTLE_ENDIAN);
+				file.getChannel().read(header, 0);
+				header.flip();
+				return header.getInt() == MAGIC && header.getInt() == VERSION
+						&& header.getLong() == source.length()
+						&& header.getLong() == source.lastModified();
+			} finally {
+				file.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Read a data set from the cache of its CSV file.
+	 *
+	 * @param ds
+	 *            data set where to put the data read
+	 * @param source
+	 *            CSV file
+	 * @param offHeap
+	 *            true to map the values instead of reading them into the heap
+	 * @throws IOException
+	 *             error at reading the cache
+	 */
+	static void read(DataSet ds, File source, boolean offHeap)
+			throws IOException {
+		// Private mappings need a channel open for writing, though the cache
+		// is never changed
+		RandomAccessFile file = new RandomAccessFile(cacheFile(source),
+				offHeap ? "rw" : "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = map(channel, 0, HEADER_SIZE);
+			header.getInt(); // Magic
+			header.getInt(); // Version
+			header.getLong(); // Size of the source
+			header.getLong(); // Date of the source
+			int nFeatures = header.getInt();
+			int nRows = header.getInt();
+			long valuesStart = header.getLong();
+
+			// Headers, types, statistics and missed values
+			ByteBuffer in = map(channel, HEADER_SIZE, valuesStart - HEADER_SIZE);
+			String[] headers = readStrings(in, nFeatures);
+			String[] types = readStrings(in, nFeatures);
+			long[] count = new long[nFeatures];
+			double[] mean = new double[nFeatures];
+			double[] m2 = new double[nFeatures];
+			for (int f = 0; f < nFeatures; f++) {
+				count[f] = in.getLong();
+				mean[f] = in.getDouble();
+				m2[f] = in.getDouble();
+			}
+			long[] rows = readBitmap(in);
+			long[][] features = new long[nFeatures][];
+			for (int f = 0; f < nFeatures; f++) {
+				features[f] = readBitmap(in);
+			}
+
+			// Values, mapped privately or read by windows of complete rows
+			Store store;
+			if (offHeap) {
+				if (valuesStart + 4L * nFeatures * nRows > channel.size()) {
+					throw new IOException("Corrupted cache");
+				}
+				store = new OffHeapStore(channel, valuesStart, nFeatures,
+						nRows, ByteOrder.LITTLE_ENDIAN);
+			} else {
+				HeapStore heapStore = new HeapStore(nFeatures);
+				long rowSize = 4L * nFeatures;
+				int rowsPerWindow = (int) Math.max(1,
+						WINDOW / Math.max(1, rowSize));
+				long position = valuesStart;
+				while (heapStore.nRows() < nRows) {
+					int n = Math.min(rowsPerWindow, nRows - heapStore.nRows());
+					heapStore.addRows(map(channel, position, n * rowSize)
+							.asFloatBuffer(), n);
+					position += n * rowSize;
+				}
+				store = heapStore;
+			}
+
+			ds.restore(headers, types, store, new MissingMask(features, rows),
+					new FeatureStats(count, mean, m2));
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Write the cache of a data set. It is written in a temporary file that
+	 * replaces the old cache at the end.
+	 *
+	 * @param ds
+	 *            data set just parsed (not standardized)
+	 * @param source
+	 *            CSV file of the data set
+	 * @throws IOException
+	 *             error at writing the cache
+	 */
+	static void write(DataSet ds, File source) throws IOException {
+		File cache = cacheFile(source);
+		File tmp = new File(cache.getPath() + ".tmp");
+		RandomAccessFile file = new RandomAccessFile(tmp, "rw");
+		try {
+			FileChannel channel = file.getChannel();
+			channel.truncate(0);
+			ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			int nFeatures = ds.nFeatures();
+
+			// Headers, types, statistics and missed values
+			channel.position(HEADER_SIZE);
+			writeStrings(channel, out, ds.getHeaders());
+			writeStrings(channel, out, ds.getTypes());
+			FeatureStats stats = ds.getStats();
+			for (int f = 0; f < nFeatures; f++) {
+				ensure(channel, out, 24);
+				out.putLong(stats.getCount(f));
+				out.putDouble(stats.getMean(f));
+				out.putDouble(stats.getM2(f));
+			}
+			MissingMask missing = ds.getMissingMask();
+			writeBitmap(channel, out, missing.getRowsBitmap());
+			for (int f = 0; f < nFeatures; f++) {
+				writeBitmap(channel, out, missing.getBitmap(f));
+			}
+			// Values start aligned to 8 bytes
+			long valuesStart = (channel.position() + out.position() + 7) & ~7L;
+			ensure(channel, out, 8);
+			while (channel.position() + out.position() < valuesStart) {
+				out.put((byte) 0);
+			}
+
+			// Values
+			for (int p = 0; p < ds.nPoints(); p++) {
+				Point point = ds.getPoint(p);
+				for (int f = 0; f < nFeatures; f++) {
+					ensure(channel, out, 4);
+					out.putFloat(point.getValue(f));
+				}
+			}
+			flush(channel, out);
+
+			// Header with the position of the values
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putLong(source.length());
+			out.putLong(source.lastModified());
+			out.putInt(nFeatures);
+			out.putInt(ds.nPoints());
+			out.putLong(valuesStart);
+			out.flip();
+			while (out.hasRemaining()) {
+				channel.write(out, out.position());
+			}
+		} finally {
+			file.close();
+		}
+
+		if (cache.exists() && !cache.delete()) {
+			tmp.delete();
+			throw new IOException("Cache can't be replaced: " + cache);
+		}
+		if (!tmp.renameTo(cache)) {
+			tmp.delete();
+			throw new IOException("Cache can't be created: " + cache);
+		}
+	}
+
+	/**
+	 * Map a region of a file.
+	 *
+	 * @param channel
+	 *            channel of the file
+	 * @param position
+	 *            start of the region
+	 * @param size
+	 *            size of the region
+	 * @return little endian buffer with the region
+	 * @throws IOException
+	 *             error at mapping the file or region too big
+	 */
+	private static ByteBuffer map(FileChannel channel, long position,
+			long size) throws IOException {
+		if (size > Integer.MAX_VALUE || position + size > channel.size()) {
+			throw new IOException("Corrupted cache");
+		}
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+				position, size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	/**
+	 * Read an array of strings.
+	 *
+	 * @param in
+	 *            buffer
+	 * @param n
+	 *            number of strings
+	 * @return strings
+	 */
+	private static String[] readStrings(ByteBuffer in, int n) {
+		String[] strings = new String[n];
+		for (int i = 0; i < n; i++) {
+			byte[] bytes = new byte[in.getInt()];
+			in.get(bytes);
+			strings[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return strings;
+	}
+
+	/**
+	 * Read a bitmap.
+	 *
+	 * @param in
+	 *            buffer
+	 * @return bitmap (null if it has no words)
+	 */
+	private static long[] readBitmap(ByteBuffer in) {
+		int n = in.getInt();
+		if (n < 0) {
+			return null;
+		}
+		long[] bitmap = new long[n];
+		in.asLongBuffer().get(bitmap);
+		in.position(in.position() + 8 * n);
+		return bitmap;
+	}
+
+	/**
+	 * Write an array of strings.
+	 *
+	 * @param channel
+	 *            channel of the file
+	 * @param out
+	 *            buffer
+	 * @param strings
+	 *            strings
+	 * @throws IOException
+	 *             error at writing
+	 */
+	private static void writeStrings(FileChannel channel, ByteBuffer out,
+			String[] strings) throws IOException {
+		for (String s : strings) {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			ensure(channel, out, 4);
+			out.putInt(bytes.length);
+			for (byte b : bytes) {
+				ensure(channel, out, 1);
+				out.put(b);
+			}
+		}
+	}
+
+	/**
+	 * Write a bitmap.
+	 *
+	 * @param channel
+	 *            channel of the file
+	 * @param out
+	 *            buffer
+	 * @param bitmap
+	 *            bitmap (can be null)
+	 * @throws IOException
+	 *             error at writing
+	 */
+	private static void writeBitmap(FileChannel channel, ByteBuffer out,
+			long[] bitmap) throws IOException {
+		ensure(channel, out, 4);
+		out.putInt(bitmap == null ? -1 : bitmap.length);
+		if (bitmap != null) {
+			for (long word : bitmap) {
+				ensure(channel, out, 8);
+				out.putLong(word);
+			}
+		}
+	}
+
+	/**
+	 * Make room in the buffer, writing it to the file if it's needed.
+	 *
+	 * @param channel
+	 *            channel of the file
+	 * @param out
+	 *            buffer
+	 * @param n
+	 *            number of bytes needed
+	 * @throws IOException
+	 *             error at writing
+	 */
+	private static void ensure(FileChannel channel, ByteBuffer out, int n)
+			throws IOException {
+		if (out.remaining() < n) {
+			flush(channel, out);
+		}
+	}
+
+	/**
+	 * Write the buffer to the file.
+	 *
+	 * @param channel
+	 *            channel of the file
+	 * @param out
+	 *            buffer
+	 * @throws IOException
+	 *             error at writing
+	 */
+	private static void flush(FileChannel channel, ByteBuffer out)
+			throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+}
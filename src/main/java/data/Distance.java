@@ -0,0 +1,70 @@
+package data;
+
+/**
+ * Distances between points with their values compacted: an array with only the
+ * features used to measure distances (the ones without missed values), so the
+ * innermost loop reads contiguous memory without indirections or checks, and
+ * the JIT compiler can unroll it and remove the bounds checks. Splitting the
+ * sum in several independent sums was slower for the usual number of features
+ * and would change the rounding of the distances.
+ */
+public final class Distance {
+
+	private Distance() {
+	}
+
+	/**
+	 * Squared Euclidean distance between two points with compacted values.
+	 *
+	 * @param a
+	 *            compacted values of a point
+	 * @param b
+	 *            compacted values of another point (same length)
+	 * @return squared distance
+	 */
+	public static double squared(float[] a, float[] b) {
+		double distance = 0;
+		for (int i = 0; i < a.length; i++) {
+			double diff = a[i] - b[i];
+			distance += diff * diff;
+		}
+		return distance;
+	}
+
+	/**
+	 * Compact the values of a point.
+	 *
+	 * @param values
+	 *            values of all the features
+	 * @param features
+	 *            features to keep
+	 * @return values of the features to keep
+	 */
+	public static float[] compact(float[] values, int[] features) {
+		float[] compacted = new float[features.length];
+		for (int i = 0; i < features.length; i++) {
+			compacted[i] = values[features[i]];
+		}
+		return compacted;
+	}
+
+	/**
+	 * Expand compacted values to all the features.
+	 *
+	 * @param compacted
+	 *            values of the features kept
+	 * @param features
+	 *            features kept
+	 * @param nFeatures
+	 *            number of features
+	 * @return values of all the features (0 in the features not kept)
+	 */
+	public static float[] expand(float[] compacted, int[] features,
+			int nFeatures) {
+		float[] values = new float[nFeatures];
+		for (int i = 0; i < features.length; i++) {
+			values[features[i]] = compacted[i];
+		}
+		return values;
+	}
+}
@@ -0,0 +1,166 @@
+package data;
+
+/**
+ * Mean and variance of each feature of a data set calculated in a single pass
+ * with the Welford's algorithm. Only the values that aren't missed are taken
+ * into account, so each feature has its own number of values. Statistics of
+ * different parts of a data set can be merged (Chan's formula), which lets
+ * every chunk of a file parsed in parallel have its own statistics.
+ */
+public class FeatureStats {
+	/** Number of values of each feature */
+	private final long[] count;
+	/** Mean of each feature */
+	private final double[] mean;
+	/** Sum of the squares of the differences from the mean of each feature */
+	private final double[] m2;
+
+	/**
+	 * Create empty statistics.
+	 *
+	 * @param nFeatures
+	 *            number of features
+	 */
+	public FeatureStats(int nFeatures) {
+		count = new long[nFeatures];
+		mean = new double[nFeatures];
+		m2 = new double[nFeatures];
+	}
+
+	/**
+	 * Create statistics already calculated.
+	 *
+	 * @param count
+	 *            number of values of each feature
+	 * @param mean
+	 *            mean of each feature
+	 * @param m2
+	 *            sum of the squares of the differences from the mean
+	 */
+	FeatureStats(long[] count, double[] mean, double[] m2) {
+		this.count = count;
+		this.mean = mean;
+		this.m2 = m2;
+	}
+
+	/**
+	 * Add the values of a point.
+	 *
+	 * @param values
+	 *            values of the features
+	 * @param missed
+	 *            features with missed values in ascending order (their values
+	 *            are ignored)
+	 * @param nMissed
+	 *            number of features with missed values
+	 */
+	public void add(float[] values, int[] missed, int nMissed) {
+		int next = 0; // Next missed feature
+		for (int f = 0; f < count.length; f++) {
+			if (next < nMissed && missed[next] == f) {
+				next++;
+			} else {
+				add(f, values[f]);
+			}
+		}
+	}
+
+	/**
+	 * Add a value of a feature.
+	 *
+	 * @param f
+	 *            feature
+	 * @param value
+	 *            value
+	 */
+	public void add(int f, double value) {
+		long n = ++count[f];
+		double delta = value - mean[f];
+		mean[f] += delta / n;
+		m2[f] += delta * (value - mean[f]);
+	}
+
+	/**
+	 * Merge the statistics of another part of the data set into these ones.
+	 *
+	 * @param other
+	 *            statistics with the same number of features
+	 */
+	public void merge(FeatureStats other) {
+		for (int f = 0; f < count.length; f++) {
+			long n = count[f] + other.count[f];
+			if (other.count[f] == 0) {
+				continue;
+			}
+			double delta = other.mean[f] - mean[f];
+			mean[f] += delta * other.count[f] / n;
+			m2[f] += other.m2[f]
+					+ delta * delta * ((double) count[f] * other.count[f] / n);
+			count[f] = n;
+		}
+	}
+
+	/**
+	 * Number of features.
+	 *
+	 * @return number of features
+	 */
+	public int nFeatures() {
+		return count.length;
+	}
+
+	/**
+	 * Number of values (not missed) of a feature.
+	 *
+	 * @param f
+	 *            feature
+	 * @return number of values
+	 */
+	public long getCount(int f) {
+		return count[f];
+	}
+
+	/**
+	 * Mean of a feature.
+	 *
+	 * @param f
+	 *            feature
+	 * @return mean of the values (0 if the feature has no values)
+	 */
+	public double getMean(int f) {
+		return mean[f];
+	}
+
+	/**
+	 * Sum of the squares of the differences from the mean of a feature.
+	 *
+	 * @param f
+	 *            feature
+	 * @return sum of squares
+	 */
+	double getM2(int f) {
+		return m2[f];
+	}
+
+	/**
+	 * Population variance of a feature.
+	 *
+	 * @param f
+	 *            feature
+	 * @return variance of the values (0 if the feature has no values)
+	 */
+	public double getVariance(int f) {
+		return count[f] == 0 ? 0 : m2[f] / count[f];
+	}
+
+	/**
+	 * Population standard deviation of a feature.
+	 *
+	 * @param f
+	 *            feature
+	 * @return standard deviation of the values
+	 */
+	public double getStandardDeviation(int f) {
+		return Math.sqrt(getVariance(f));
+	}
+}
@@ -0,0 +1,153 @@
+package data;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Store that keeps the values in the Java heap. Rows are laid out one after
+ * the other in blocks of contiguous floats, so scanning the data set means
+ * scanning a few big arrays. Blocks let the store grow while parsing without
+ * copying the values already read.
+ */
+class HeapStore implements Store {
+	/** Maximum number of floats of each block (4 MB) */
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	/** Number of features of each row */
+	private final int nFeatures;
+	/** log2 of the number of rows of each block */
+	private final int shift;
+	/** Mask to get the position of a row inside its block */
+	private final int mask;
+	/** Blocks of rows */
+	private float[][] blocks;
+	/** Number of rows stored */
+	private int nRows;
+
+	/**
+	 * Create an empty store.
+	 *
+	 * @param nFeatures
+	 *            number of features of each row
+	 */
+	HeapStore(int nFeatures) {
+		this.nFeatures = nFeatures;
+		int rowsPerBlock = Integer
+				.highestOneBit(Math.max(1, BLOCK_SIZE / Math.max(1, nFeatures)));
+		this.shift = Integer.numberOfTrailingZeros(rowsPerBlock);
+		this.mask = rowsPerBlock - 1;
+		this.blocks = new float[16][];
+		this.nRows = 0;
+	}
+
+	@Override
+	public int nRows() {
+		return nRows;
+	}
+
+	@Override
+	public int nFeatures() {
+		return nFeatures;
+	}
+
+	@Override
+	public int addRow(float[] values) {
+		int row = nRows;
+		System.arraycopy(values, 0, block(row), (row & mask) * nFeatures,
+				nFeatures);
+		nRows++;
+		return row;
+	}
+
+	/**
+	 * Append rows read from a buffer.
+	 *
+	 * @param values
+	 *            buffer with the values of the rows one after the other
+	 * @param n
+	 *            number of rows to read
+	 */
+	void addRows(FloatBuffer values, int n) {
+		int end = nRows + n;
+		while (nRows < end) {
+			int to = nRows & mask;
+			// Read as many rows as fit in the block at once
+			int rows = Math.min(mask + 1 - to, end - nRows);
+			values.get(block(nRows), to * nFeatures, rows * nFeatures);
+			nRows += rows;
+		}
+	}
+
+	@Override
+	public void addAll(Store other) {
+		if (!(other instanceof HeapStore)) {
+			for (int row = 0; row < other.nRows(); row++) {
+				addRow(other.point(row).getValues());
+			}
+			return;
+		}
+		addAll((HeapStore) other);
+	}
+
+	/**
+	 * Append all the rows of another heap store copying whole runs of rows.
+	 *
+	 * @param other
+	 *            store with the same number of features
+	 */
+	private void addAll(HeapStore other) {
+		int row = 0;
+		while (row < other.nRows) {
+			int to = nRows & mask;
+			int from = row & other.mask;
+			// Copy as many rows as fit in both blocks at once
+			int n = Math.min(Math.min(mask + 1 - to, other.mask + 1 - from),
+					other.nRows - row);
+			System.arraycopy(other.blocks[row >>> other.shift],
+					from * nFeatures, block(nRows), to * nFeatures,
+					n * nFeatures);
+			nRows += n;
+			row += n;
+		}
+	}
+
+	@Override
+	public float get(int row, int f) {
+		return blocks[row >>> shift][(row & mask) * nFeatures + f];
+	}
+
+	@Override
+	public void set(int row, int f, float value) {
+		blocks[row >>> shift][(row & mask) * nFeatures + f] = value;
+	}
+
+	@Override
+	public Point point(int row) {
+		return new Point(blocks[row >>> shift], (row & mask) * nFeatures,
+				nFeatures);
+	}
+
+	@Override
+	public void close() {
+		blocks = new float[0][];
+		nRows = 0;
+	}
+
+	/**
+	 * Get the block where a row goes, creating it if it doesn't exist.
+	 *
+	 * @param row
+	 *            row
+	 * @return block of the row
+	 */
+	private float[] block(int row) {
+		int b = row >>> shift;
+		if (b >= blocks.length) {
+			blocks = Arrays.copyOf(blocks, Math.max(b + 1, blocks.length * 2));
+		}
+		if (blocks[b] == null) {
+			blocks[b] = new float[(mask + 1) * nFeatures];
+		}
+		return blocks[b];
+	}
+}
@@ -0,0 +1,16 @@
+package data;
+
+/**
+ * Ways of reading the CSV file of a data set.
+ */
+public enum Ingestion {
+	/** Parse the file line by line with opencsv */
+	CSV_READER,
+	/** Map the file in memory and parse the values straight from its bytes */
+	MAPPED,
+	/**
+	 * Read the binary cache of the file if it's up to date. If not, parse the
+	 * file like {@link #MAPPED} and write the cache for the next time.
+	 */
+	CACHED
+}
@@ -0,0 +1,486 @@
+package data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import au.com.bytecode.opencsv.CSVParser;
+
+/**
+ * Reader of CSV files that maps the file in memory and parses the numbers
+ * straight from its bytes, without creating a string for each value. The file
+ * is mapped by windows, so files bigger than 2 GB can be read too. Values that
+ * the fast parser doesn't understand (quoted values, special numbers, etc.)
+ * fall back to {@link Float#parseFloat(String)}.
+ */
+class MappedCsvReader implements Closeable {
+	/** Maximum number of bytes mapped at the same time (1 GB) */
+	private static final int WINDOW = 1 << 30;
+	/** Maximum number of significant digits parsed without losing precision */
+	private static final int MAX_DIGITS = 15;
+	/** Powers of ten that can be represented exactly as a double */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+			1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/** Channel of the file */
+	private final FileChannel channel;
+	/** If the channel has to be closed with the reader */
+	private final boolean ownChannel;
+	/** Separator of the values */
+	private final byte separator;
+	/** Quote character */
+	private final byte quote;
+	/** Position of the file where the reader stops */
+	private final long end;
+	/** Maximum number of bytes mapped at the same time */
+	private final int window;
+
+	/** Mapped window of the file */
+	private MappedByteBuffer buffer;
+	/** Position of the file where the window starts */
+	private long bufferStart;
+	/** Number of bytes of the window */
+	private int limit;
+	/** Current position in the window */
+	private int pos;
+
+	/** Features with missed values of the last row read */
+	private int[] missed;
+	/** Number of features with missed values of the last row read */
+	private int nMissed;
+
+	/**
+	 * Create a reader for a whole file.
+	 *
+	 * @param file
+	 *            CSV file
+	 * @param separator
+	 *            separator of the values
+	 * @param quote
+	 *            quote character
+	 * @throws IOException
+	 *             error at opening the file
+	 */
+	MappedCsvReader(File file, char separator, char quote)
+			throws IOException {
+		this(new RandomAccessFile(file, "r").getChannel(), true, 0, -1,
+				separator, quote, WINDOW);
+	}
+
+	/**
+	 * Create a reader for a range of a file.
+	 *
+	 * @param channel
+	 *            channel of the file (it isn't closed with the reader)
+	 * @param start
+	 *            position where the first line to read starts
+	 * @param end
+	 *            position where the reader stops (-1 for the end of the file)
+	 * @param separator
+	 *            separator of the values
+	 * @param quote
+	 *            quote character
+	 * @throws IOException
+	 *             error at mapping the file
+	 */
+	MappedCsvReader(FileChannel channel, long start, long end, char separator,
+			char quote) throws IOException {
+		this(channel, false, start, end, separator, quote, WINDOW);
+	}
+
+	/**
+	 * Create a reader for a range of a file.
+	 *
+	 * @param channel
+	 *            channel of the file
+	 * @param ownChannel
+	 *            true if the channel has to be closed with the reader
+	 * @param start
+	 *            position where the first line to read starts
+	 * @param end
+	 *            position where the reader stops (-1 for the end of the file)
+	 * @param separator
+	 *            separator of the values
+	 * @param quote
+	 *            quote character
+	 * @param window
+	 *            maximum number of bytes mapped at the same time
+	 * @throws IOException
+	 *             error at mapping the file
+	 */
+	MappedCsvReader(FileChannel channel, boolean ownChannel, long start,
+			long end, char separator, char quote, int window)
+			throws IOException {
+		this.channel = channel;
+		this.ownChannel = ownChannel;
+		this.end = end < 0 ? channel.size() : end;
+		this.separator = (byte) separator;
+		this.quote = (byte) quote;
+		this.window = window;
+		this.missed = new int[16];
+		map(start);
+	}
+
+	/**
+	 * Read the next line as an array of strings. Used for the headers.
+	 *
+	 * @return values of the line or null if there are no more lines
+	 * @throws IOException
+	 *             error at reading the file
+	 */
+	String[] readLine() throws IOException {
+		if (!hasNext()) {
+			return null;
+		}
+		int lineEnd = findLineEnd();
+		byte[] bytes = new byte[lineEnd - pos];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(pos + i);
+		}
+		pos = lineEnd < limit ? lineEnd + 1 : lineEnd;
+		String line = new String(bytes, StandardCharsets.UTF_8);
+		if (line.endsWith("\r")) {
+			line = line.substring(0, line.length() - 1);
+		}
+		return new CSVParser((char) separator, (char) quote).parseLine(line);
+	}
+
+	/**
+	 * Parse the next row of numbers. Missed values (empty values) are stored as
+	 * 0 and registered (see {@link #nMissed()} and {@link #getMissed(int)}).
+	 *
+	 * @param values
+	 *            array where to put the values of the row
+	 * @return number of values of the row (it can be greater than the length
+	 *         of the array) or -1 if there are no more rows
+	 * @throws IOException
+	 *             error at reading the file
+	 * @throws NumberFormatException
+	 *             some value isn't a number
+	 */
+	int next(float[] values) throws IOException, NumberFormatException {
+		if (!hasNext()) {
+			return -1;
+		}
+		int lineEnd = findLineEnd();
+		int to = lineEnd > pos && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1
+				: lineEnd;
+
+		nMissed = 0;
+		int f = 0;
+		while (true) {
+			float value = 0;
+			boolean isMissed = false;
+			if (pos == to || buffer.get(pos) == separator) {
+				isMissed = true;
+			} else {
+				value = parseNumber(to);
+				if (value != value) { // Not understood by the fast parser
+					String text = readText(to);
+					isMissed = text.isEmpty();
+					value = isMissed ? 0 : Float.parseFloat(text);
+				}
+			}
+
+			if (f < values.length) {
+				values[f] = value;
+				if (isMissed) {
+					addMissed(f);
+				}
+			}
+			f++;
+
+			if (pos == to) {
+				break;
+			}
+			pos++; // Skip separator
+		}
+
+		pos = lineEnd < limit ? lineEnd + 1 : lineEnd;
+		return f;
+	}
+
+	/**
+	 * Position of the file where the next line starts.
+	 *
+	 * @return position in bytes
+	 */
+	long position() {
+		return bufferStart + pos;
+	}
+
+	/**
+	 * Find the first position where a line starts at or after a position of
+	 * a file. Used to split a file in chunks of complete lines.
+	 *
+	 * @param channel
+	 *            channel of the file
+	 * @param position
+	 *            position of the file
+	 * @return position where the line starts (the size of the file if there
+	 *         are no more lines)
+	 * @throws IOException
+	 *             error at reading the file
+	 */
+	static long lineStart(FileChannel channel, long position)
+			throws IOException {
+		if (position == 0) {
+			return 0;
+		}
+		ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+		long p = position - 1; // The line starts after a new line character
+		while (true) {
+			bytes.clear();
+			int n = channel.read(bytes, p);
+			if (n <= 0) {
+				return channel.size();
+			}
+			for (int i = 0; i < n; i++) {
+				if (bytes.get(i) == '\n') {
+					return p + i + 1;
+				}
+			}
+			p += n;
+		}
+	}
+
+	/**
+	 * Number of missed values of the last row read.
+	 *
+	 * @return number of features with missed values
+	 */
+	int nMissed() {
+		return nMissed;
+	}
+
+	/**
+	 * Get a feature with missed value of the last row read.
+	 *
+	 * @param i
+	 *            position (from 0 to nMissed() - 1)
+	 * @return feature
+	 */
+	int getMissed(int i) {
+		return missed[i];
+	}
+
+	@Override
+	public void close() throws IOException {
+		buffer = null;
+		if (ownChannel) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Answer if there are more lines to read.
+	 *
+	 * @return true if there are more lines
+	 */
+	private boolean hasNext() {
+		return bufferStart + pos < end;
+	}
+
+	/**
+	 * Map a new window of the file.
+	 *
+	 * @param start
+	 *            position of the file where the window starts
+	 * @throws IOException
+	 *             error at mapping the file
+	 */
+	private void map(long start) throws IOException {
+		long size = Math.min(window, end - start);
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		bufferStart = start;
+		limit = (int) size;
+		pos = 0;
+	}
+
+	/**
+	 * Find the end of the current line, mapping a new window if the line
+	 * isn't completely inside the current one.
+	 *
+	 * @return position of the new line character (or the end of the window if
+	 *         it's the last line)
+	 * @throws IOException
+	 *             error at mapping the file or line longer than the window
+	 */
+	private int findLineEnd() throws IOException {
+		int i = pos;
+		while (true) {
+			while (i < limit) {
+				if (buffer.get(i) == '\n') {
+					return i;
+				}
+				i++;
+			}
+			if (bufferStart + limit >= end) {
+				return limit;
+			}
+			if (pos == 0) {
+				throw new IOException("Line too long at byte " + bufferStart);
+			}
+			int lineStart = pos;
+			map(bufferStart + lineStart);
+			i -= lineStart;
+		}
+	}
+
+	/**
+	 * Parse a simple decimal number ([-]digits[.digits][e[-]digits]) without
+	 * creating any object.
+	 *
+	 * @param to
+	 *            end of the line
+	 * @return value or NaN if the number can't be parsed exactly in this way
+	 */
+	private float parseNumber(int to) {
+		int p = pos;
+		boolean negative = false;
+		byte b = buffer.get(p);
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			p++;
+		}
+
+		long mantissa = 0;
+		int digits = 0; // Significant digits
+		int exponent = 0;
+		boolean hasDigits = false;
+		while (p < to && (b = buffer.get(p)) >= '0' && b <= '9') {
+			mantissa = mantissa * 10 + (b - '0');
+			digits += mantissa == 0 ? 0 : 1;
+			hasDigits = true;
+			p++;
+			if (digits > MAX_DIGITS) {
+				return Float.NaN;
+			}
+		}
+		if (p < to && buffer.get(p) == '.') {
+			p++;
+			while (p < to && (b = buffer.get(p)) >= '0' && b <= '9') {
+				mantissa = mantissa * 10 + (b - '0');
+				digits += mantissa == 0 ? 0 : 1;
+				exponent--;
+				hasDigits = true;
+				p++;
+				if (digits > MAX_DIGITS) {
+					return Float.NaN;
+				}
+			}
+		}
+		if (!hasDigits) {
+			return Float.NaN;
+		}
+		if (p < to && ((b = buffer.get(p)) == 'e' || b == 'E')) {
+			p++;
+			boolean negativeExp = false;
+			if (p < to && ((b = buffer.get(p)) == '-' || b == '+')) {
+				negativeExp = b == '-';
+				p++;
+			}
+			int exp = 0;
+			boolean hasExpDigits = false;
+			while (p < to && (b = buffer.get(p)) >= '0' && b <= '9') {
+				exp = Math.min(exp * 10 + (b - '0'), 1000);
+				hasExpDigits = true;
+				p++;
+			}
+			if (!hasExpDigits) {
+				return Float.NaN;
+			}
+			exponent += negativeExp ? -exp : exp;
+		}
+		if (p != to && buffer.get(p) != separator) {
+			return Float.NaN;
+		}
+
+		float value = toFloat(mantissa, exponent);
+		if (value == value) {
+			pos = p;
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Calculate mantissa * 10^exponent as a float correctly rounded. It only
+	 * uses one exact double operation, so the result is the same as the one
+	 * of {@link Float#parseFloat(String)}.
+	 *
+	 * @param mantissa
+	 *            decimal digits
+	 * @param exponent
+	 *            exponent of ten
+	 * @return value or NaN if it can't be calculated exactly in this way
+	 */
+	private static float toFloat(long mantissa, int exponent) {
+		if (mantissa == 0) {
+			return 0F;
+		}
+		if (exponent < -22 || exponent > 22) {
+			return Float.NaN;
+		}
+		double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent]
+				: mantissa * POWERS_OF_TEN[exponent];
+		if (value < Float.MIN_NORMAL || value > Float.MAX_VALUE) {
+			return Float.NaN;
+		}
+		// Value just in the middle of two floats: rounding the double to float
+		// could be different to rounding the exact value
+		if ((Double.doubleToRawLongBits(value) & 0x1FFFFFFFL) == 0x10000000L) {
+			return Float.NaN;
+		}
+		return (float) value;
+	}
+
+	/**
+	 * Read the text of the current value, removing the quotes.
+	 *
+	 * @param to
+	 *            end of the line
+	 * @return text of the value
+	 */
+	private String readText(int to) {
+		StringBuilder text = new StringBuilder();
+		boolean quoted = false;
+		while (pos < to) {
+			byte b = buffer.get(pos);
+			if (b == quote) {
+				if (quoted && pos + 1 < to && buffer.get(pos + 1) == quote) {
+					text.append((char) quote); // Escaped quote
+					pos++;
+				} else {
+					quoted = !quoted;
+				}
+			} else if (b == separator && !quoted) {
+				break;
+			} else {
+				text.append((char) (b & 0xFF));
+			}
+			pos++;
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Register a missed value of the current row.
+	 *
+	 * @param f
+	 *            feature
+	 */
+	private void addMissed(int f) {
+		if (nMissed == missed.length) {
+			int[] bigger = new int[missed.length * 2];
+			System.arraycopy(missed, 0, bigger, 0, nMissed);
+			missed = bigger;
+		}
+		missed[nMissed++] = f;
+	}
+}
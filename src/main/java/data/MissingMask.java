@@ -0,0 +1,217 @@
+package data;
+
+import java.util.Arrays;
+
+/**
+ * Register of the missed values of a data set. It has a bitmap for each
+ * feature with one bit per row, so asking if a value is missed is just testing
+ * a bit and counting the missed values of a feature is a population count.
+ * Features without missed values don't have bitmap. It also has a bitmap with
+ * the rows that have some missed value.
+ */
+public class MissingMask {
+	/** Bitmap of each feature (null if the feature has no missed values) */
+	private long[][] features;
+	/** Bitmap of the rows with some missed value */
+	private long[] rows;
+
+	/**
+	 * Create an empty mask.
+	 *
+	 * @param nFeatures
+	 *            number of features
+	 */
+	public MissingMask(int nFeatures) {
+		features = new long[nFeatures][];
+		rows = new long[0];
+	}
+
+	/**
+	 * Create a mask from its bitmaps.
+	 *
+	 * @param features
+	 *            bitmap of each feature (null if no missed values)
+	 * @param rows
+	 *            bitmap of the rows with some missed value
+	 */
+	MissingMask(long[][] features, long[] rows) {
+		this.features = features;
+		this.rows = rows;
+	}
+
+	/**
+	 * Register a missed value.
+	 *
+	 * @param row
+	 *            row
+	 * @param f
+	 *            feature
+	 */
+	public void set(int row, int f) {
+		int word = row >>> 6;
+		long bit = 1L << row;
+		if (features[f] == null || word >= features[f].length) {
+			features[f] = grow(features[f], word);
+		}
+		if (word >= rows.length) {
+			rows = grow(rows, word);
+		}
+		features[f][word] |= bit;
+		rows[word] |= bit;
+	}
+
+	/**
+	 * Answer if a value is missed.
+	 *
+	 * @param row
+	 *            row
+	 * @param f
+	 *            feature
+	 * @return true if the value of the feature of the row is missed
+	 */
+	public boolean isMissed(int row, int f) {
+		long[] bitmap = features[f];
+		int word = row >>> 6;
+		return bitmap != null && word < bitmap.length
+				&& (bitmap[word] & (1L << row)) != 0;
+	}
+
+	/**
+	 * Answer if a row has some missed value.
+	 *
+	 * @param row
+	 *            row
+	 * @return true if the row has missed values
+	 */
+	public boolean hasMissed(int row) {
+		int word = row >>> 6;
+		return word < rows.length && (rows[word] & (1L << row)) != 0;
+	}
+
+	/**
+	 * Answer if a feature has some missed value.
+	 *
+	 * @param f
+	 *            feature
+	 * @return true if the feature has missed values
+	 */
+	public boolean hasMissedValues(int f) {
+		return features[f] != null;
+	}
+
+	/**
+	 * Number of missed values of a feature.
+	 *
+	 * @param f
+	 *            feature
+	 * @return number of rows with the value of the feature missed
+	 */
+	public long count(int f) {
+		return count(features[f]);
+	}
+
+	/**
+	 * Number of missed values of a row.
+	 *
+	 * @param row
+	 *            row
+	 * @return number of features of the row with missed value
+	 */
+	public int countRow(int row) {
+		if (!hasMissed(row)) {
+			return 0;
+		}
+		int n = 0;
+		for (int f = 0; f < features.length; f++) {
+			n += isMissed(row, f) ? 1 : 0;
+		}
+		return n;
+	}
+
+	/**
+	 * Number of rows with some missed value.
+	 *
+	 * @return number of incomplete rows
+	 */
+	public long countRows() {
+		return count(rows);
+	}
+
+	/**
+	 * Add the missed values of another mask.
+	 *
+	 * @param other
+	 *            mask with the same number of features
+	 * @param offset
+	 *            row of this mask where the first row of the other goes
+	 */
+	public void addAll(MissingMask other, int offset) {
+		for (int f = 0; f < features.length; f++) {
+			long[] bitmap = other.features[f];
+			if (bitmap == null) {
+				continue;
+			}
+			for (int word = 0; word < bitmap.length; word++) {
+				long bits = bitmap[word];
+				while (bits != 0) {
+					set(offset + (word << 6) + Long.numberOfTrailingZeros(bits),
+							f);
+					bits &= bits - 1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the bitmap of a feature.
+	 *
+	 * @param f
+	 *            feature
+	 * @return bitmap (null if the feature has no missed values)
+	 */
+	long[] getBitmap(int f) {
+		return features[f];
+	}
+
+	/**
+	 * Get the bitmap of the rows with some missed value.
+	 *
+	 * @return bitmap of the rows
+	 */
+	long[] getRowsBitmap() {
+		return rows;
+	}
+
+	/**
+	 * Count the bits of a bitmap.
+	 *
+	 * @param bitmap
+	 *            bitmap (can be null)
+	 * @return number of bits set
+	 */
+	private static long count(long[] bitmap) {
+		long n = 0;
+		if (bitmap != null) {
+			for (long word : bitmap) {
+				n += Long.bitCount(word);
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Grow a bitmap to have a word.
+	 *
+	 * @param bitmap
+	 *            bitmap (can be null)
+	 * @param word
+	 *            word that must fit in the bitmap
+	 * @return new bitmap
+	 */
+	private static long[] grow(long[] bitmap, int word) {
+		if (bitmap == null) {
+			return new long[Math.max(word + 1, 16)];
+		}
+		return Arrays.copyOf(bitmap, Math.max(word + 1, bitmap.length * 2));
+	}
+}
@@ -0,0 +1,345 @@
+package data;
+
+import java.math.BigInteger;
+
+/**
+ * Formatter of numbers straight into an array of bytes, without creating
+ * strings. Floats are written with the shortest decimal that is read back as
+ * the same float (Ryu algorithm) in the layout of {@link Float#toString(float)}
+ * (for example "12.5", "0.001" or "1.0E-5").
+ */
+final class NumberFormatter {
+	/** Maximum number of bytes of a formatted number */
+	static final int MAX_LENGTH = 24;
+
+	/** Bits of the mantissa of a float */
+	private static final int MANTISSA_BITS = 23;
+	/** Bias of the exponent of a float */
+	private static final int BIAS = 127;
+	/** Bits of the multipliers by inverse powers of five */
+	private static final int POW5_INV_BITCOUNT = 59;
+	/** Bits of the multipliers by powers of five */
+	private static final int POW5_BITCOUNT = 61;
+	/** Multipliers to divide by powers of five */
+	private static final long[] POW5_INV_SPLIT = new long[31];
+	/** Multipliers to multiply by powers of five */
+	private static final long[] POW5_SPLIT = new long[47];
+
+	static {
+		BigInteger five = BigInteger.valueOf(5);
+		for (int i = 0; i < POW5_SPLIT.length; i++) {
+			BigInteger pow = five.pow(i);
+			int shift = pow5bits(i) - POW5_BITCOUNT;
+			POW5_SPLIT[i] = (shift >= 0 ? pow.shiftRight(shift)
+					: pow.shiftLeft(-shift)).longValue();
+		}
+		for (int i = 0; i < POW5_INV_SPLIT.length; i++) {
+			BigInteger pow = five.pow(i);
+			int shift = pow5bits(i) - 1 + POW5_INV_BITCOUNT;
+			POW5_INV_SPLIT[i] = BigInteger.ONE.shiftLeft(shift).divide(pow)
+					.longValue() + 1;
+		}
+	}
+
+	private NumberFormatter() {
+	}
+
+	/**
+	 * Write an integer.
+	 *
+	 * @param value
+	 *            number
+	 * @param bytes
+	 *            array where to write (it needs room for
+	 *            {@link #MAX_LENGTH} bytes)
+	 * @param pos
+	 *            position of the array where to start
+	 * @return position after the last byte written
+	 */
+	static int format(int value, byte[] bytes, int pos) {
+		long absolute = value;
+		if (value < 0) {
+			bytes[pos++] = '-';
+			absolute = -absolute;
+		}
+		return writeDigits(absolute, digits(absolute), bytes, pos);
+	}
+
+	/**
+	 * Write a float.
+	 *
+	 * @param value
+	 *            number
+	 * @param bytes
+	 *            array where to write (it needs room for
+	 *            {@link #MAX_LENGTH} bytes)
+	 * @param pos
+	 *            position of the array where to start
+	 * @return position after the last byte written
+	 */
+	static int format(float value, byte[] bytes, int pos) {
+		int bits = Float.floatToRawIntBits(value);
+		int ieeeExponent = (bits >>> MANTISSA_BITS) & 0xFF;
+		int ieeeMantissa = bits & ((1 << MANTISSA_BITS) - 1);
+		if (ieeeExponent == 0xFF || value == 0 || ieeeExponent == 0) {
+			// NaN, infinities, zeros and subnormals (they have a special
+			// rule about the number of digits) are left to the JDK
+			String s = Float.toString(value);
+			for (int i = 0; i < s.length(); i++) {
+				bytes[pos++] = (byte) s.charAt(i);
+			}
+			return pos;
+		}
+		if (bits < 0) {
+			bytes[pos++] = '-';
+		}
+
+		// Shortest decimal: output * 10^exponent
+		int e2 = ieeeExponent - BIAS - MANTISSA_BITS - 2;
+		long m2 = (1L << MANTISSA_BITS) | ieeeMantissa;
+		boolean even = (m2 & 1) == 0;
+		long mv = 4 * m2;
+		long mp = 4 * m2 + 2;
+		int mmShift = ieeeMantissa != 0 || ieeeExponent <= 1 ? 1 : 0;
+		long mm = 4 * m2 - 1 - mmShift;
+
+		long vr, vp, vm;
+		int e10;
+		boolean vmIsTrailingZeros = false;
+		boolean vrIsTrailingZeros = false;
+		int lastRemovedDigit = 0;
+		if (e2 >= 0) {
+			int q = log10Pow2(e2);
+			e10 = q;
+			int k = POW5_INV_BITCOUNT + pow5bits(q) - 1;
+			int i = -e2 + q + k;
+			vr = mulShift(mv, POW5_INV_SPLIT[q], i);
+			vp = mulShift(mp, POW5_INV_SPLIT[q], i);
+			vm = mulShift(mm, POW5_INV_SPLIT[q], i);
+			if (q != 0 && (vp - 1) / 10 <= vm / 10) {
+				int l = POW5_INV_BITCOUNT + pow5bits(q - 1) - 1;
+				lastRemovedDigit = (int) (mulShift(mv, POW5_INV_SPLIT[q - 1],
+						-e2 + q - 1 + l) % 10);
+			}
+			if (q <= 9) {
+				if (mv % 5 == 0) {
+					vrIsTrailingZeros = pow5Factor(mv) >= q;
+				} else if (even) {
+					vmIsTrailingZeros = pow5Factor(mm) >= q;
+				} else if (pow5Factor(mp) >= q) {
+					vp--;
+				}
+			}
+		} else {
+			int q = log10Pow5(-e2);
+			e10 = q + e2;
+			int i = -e2 - q;
+			int k = pow5bits(i) - POW5_BITCOUNT;
+			int j = q - k;
+			vr = mulShift(mv, POW5_SPLIT[i], j);
+			vp = mulShift(mp, POW5_SPLIT[i], j);
+			vm = mulShift(mm, POW5_SPLIT[i], j);
+			if (q != 0 && (vp - 1) / 10 <= vm / 10) {
+				j = q - 1 - (pow5bits(i + 1) - POW5_BITCOUNT);
+				lastRemovedDigit = (int) (mulShift(mv, POW5_SPLIT[i + 1], j)
+						% 10);
+			}
+			if (q <= 1) {
+				vrIsTrailingZeros = true;
+				if (even) {
+					vmIsTrailingZeros = mmShift == 1;
+				} else {
+					vp--;
+				}
+			} else if (q < 31) {
+				vrIsTrailingZeros = (mv & ((1L << (q - 1)) - 1)) == 0;
+			}
+		}
+
+		// Remove the digits that aren't needed to tell the float apart
+		int removed = 0;
+		long output;
+		if (vmIsTrailingZeros || vrIsTrailingZeros) {
+			while (vp / 10 > vm / 10) {
+				vmIsTrailingZeros &= vm % 10 == 0;
+				vrIsTrailingZeros &= lastRemovedDigit == 0;
+				lastRemovedDigit = (int) (vr % 10);
+				vr /= 10;
+				vp /= 10;
+				vm /= 10;
+				removed++;
+			}
+			if (vmIsTrailingZeros) {
+				while (vm % 10 == 0) {
+					vrIsTrailingZeros &= lastRemovedDigit == 0;
+					lastRemovedDigit = (int) (vr % 10);
+					vr /= 10;
+					vp /= 10;
+					vm /= 10;
+					removed++;
+				}
+			}
+			if (vrIsTrailingZeros && lastRemovedDigit == 5 && vr % 2 == 0) {
+				lastRemovedDigit = 4; // Round to even
+			}
+			output = vr + ((vr == vm && (!even || !vmIsTrailingZeros))
+					|| lastRemovedDigit >= 5 ? 1 : 0);
+		} else {
+			while (vp / 10 > vm / 10) {
+				lastRemovedDigit = (int) (vr % 10);
+				vr /= 10;
+				vp /= 10;
+				vm /= 10;
+				removed++;
+			}
+			output = vr + (vr == vm || lastRemovedDigit >= 5 ? 1 : 0);
+		}
+		int exponent = e10 + removed;
+
+		// Layout of Float.toString: plain between 10^-3 and 10^7
+		int length = digits(output);
+		int scientific = exponent + length - 1;
+		if (scientific >= 0 && scientific < 7) {
+			if (exponent >= 0) {
+				pos = writeDigits(output, length, bytes, pos);
+				for (int i = 0; i < exponent; i++) {
+					bytes[pos++] = '0';
+				}
+				bytes[pos++] = '.';
+				bytes[pos++] = '0';
+			} else {
+				int end = writeDigits(output, length, bytes, pos + 1);
+				int point = pos + scientific + 1;
+				for (int i = pos; i < point; i++) {
+					bytes[i] = bytes[i + 1];
+				}
+				bytes[point] = '.';
+				pos = end;
+			}
+		} else if (scientific < 0 && scientific >= -3) {
+			bytes[pos++] = '0';
+			bytes[pos++] = '.';
+			for (int i = -1; i > scientific; i--) {
+				bytes[pos++] = '0';
+			}
+			pos = writeDigits(output, length, bytes, pos);
+		} else {
+			int end = writeDigits(output, length, bytes, pos + 1);
+			bytes[pos] = bytes[pos + 1];
+			bytes[pos + 1] = '.';
+			if (length == 1) {
+				end++;
+				bytes[pos + 2] = '0';
+			}
+			pos = end;
+			bytes[pos++] = 'E';
+			pos = format(scientific, bytes, pos);
+		}
+		return pos;
+	}
+
+	/**
+	 * Write the digits of a positive number.
+	 *
+	 * @param value
+	 *            number
+	 * @param length
+	 *            number of digits
+	 * @param bytes
+	 *            array where to write
+	 * @param pos
+	 *            position of the array where to start
+	 * @return position after the last digit
+	 */
+	private static int writeDigits(long value, int length, byte[] bytes,
+			int pos) {
+		int end = pos + length;
+		for (int i = end - 1; i >= pos; i--) {
+			bytes[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return end;
+	}
+
+	/**
+	 * Number of digits of a positive number.
+	 *
+	 * @param value
+	 *            number
+	 * @return number of decimal digits (1 for 0)
+	 */
+	private static int digits(long value) {
+		int n = 1;
+		while (value >= 10) {
+			value /= 10;
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Multiply a number by a 64 bits factor and shift the result.
+	 *
+	 * @param m
+	 *            number (less than 2^32)
+	 * @param factor
+	 *            factor
+	 * @param shift
+	 *            bits to shift (at least 32)
+	 * @return (m * factor) >> shift
+	 */
+	private static long mulShift(long m, long factor, int shift) {
+		long low = m * (factor & 0xFFFFFFFFL);
+		long high = m * (factor >>> 32);
+		return ((low >>> 32) + high) >>> (shift - 32);
+	}
+
+	/**
+	 * Number of times a number can be divided by five.
+	 *
+	 * @param value
+	 *            positive number
+	 * @return exponent of 5 in the number
+	 */
+	private static int pow5Factor(long value) {
+		int count = 0;
+		while (value % 5 == 0) {
+			value /= 5;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Number of bits of a power of five.
+	 *
+	 * @param e
+	 *            exponent
+	 * @return ceil(log2(5^e)) (1 for 0)
+	 */
+	private static int pow5bits(int e) {
+		return ((e * 1217359) >>> 19) + 1;
+	}
+
+	/**
+	 * floor(log10(2^e)).
+	 *
+	 * @param e
+	 *            exponent
+	 * @return logarithm
+	 */
+	private static int log10Pow2(int e) {
+		return (e * 78913) >>> 18;
+	}
+
+	/**
+	 * floor(log10(5^e)).
+	 *
+	 * @param e
+	 *            exponent
+	 * @return logarithm
+	 */
+	private static int log10Pow5(int e) {
+		return (e * 732923) >>> 20;
+	}
+}
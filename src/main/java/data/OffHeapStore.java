@@ -0,0 +1,203 @@
+package data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Store that keeps the values out of the Java heap, in segments of a file
+ * mapped in memory. The operating system decides which parts of the data set
+ * are in memory, so data sets much bigger than the heap can be used. Rows are
+ * laid out like in {@link HeapStore}, one after the other.
+ * <p>
+ * The file can be a temporary file (deleted as soon as it's created, so
+ * nothing remains on disk) or the values of a cache, mapped privately so
+ * changes are never written back to the cache.
+ */
+class OffHeapStore implements Store {
+	/** Maximum number of bytes of each segment (1 GB) */
+	private static final int SEGMENT_SIZE = 1 << 30;
+
+	/** Number of features of each row */
+	private final int nFeatures;
+	/** log2 of the number of rows of each segment */
+	private final int shift;
+	/** Mask to get the position of a row inside its segment */
+	private final int mask;
+	/** Channel of the temporary file (null if the store can't grow) */
+	private final FileChannel channel;
+	/** Segments of rows */
+	private FloatBuffer[] segments;
+	/** Number of rows stored */
+	private int nRows;
+
+	/**
+	 * Create an empty store in a temporary file.
+	 *
+	 * @param nFeatures
+	 *            number of features of each row
+	 * @throws IOException
+	 *             error at creating the temporary file
+	 */
+	OffHeapStore(int nFeatures) throws IOException {
+		this.nFeatures = nFeatures;
+		int rowsPerSegment = rowsPerSegment(nFeatures);
+		this.shift = Integer.numberOfTrailingZeros(rowsPerSegment);
+		this.mask = rowsPerSegment - 1;
+		this.segments = new FloatBuffer[4];
+		this.nRows = 0;
+
+		File file = File.createTempFile("cfmv", ".store");
+		this.channel = new RandomAccessFile(file, "rw").getChannel();
+		if (!file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Create a store with the rows saved in a region of a file. The region is
+	 * mapped privately, so changes in the store aren't written in the file.
+	 *
+	 * @param channel
+	 *            channel of the file (it can be closed afterwards)
+	 * @param position
+	 *            position of the file where the first row starts
+	 * @param nFeatures
+	 *            number of features of each row
+	 * @param nRows
+	 *            number of rows
+	 * @param order
+	 *            byte order of the values
+	 * @throws IOException
+	 *             error at mapping the file
+	 */
+	OffHeapStore(FileChannel channel, long position, int nFeatures, int nRows,
+			ByteOrder order) throws IOException {
+		this.nFeatures = nFeatures;
+		int rowsPerSegment = rowsPerSegment(nFeatures);
+		this.shift = Integer.numberOfTrailingZeros(rowsPerSegment);
+		this.mask = rowsPerSegment - 1;
+		this.channel = null;
+		this.nRows = nRows;
+
+		int nSegments = (int) (((long) nRows + mask) >>> shift);
+		this.segments = new FloatBuffer[Math.max(1, nSegments)];
+		long segmentBytes = 4L * nFeatures * rowsPerSegment;
+		for (int s = 0; s < nSegments; s++) {
+			int rows = Math.min(rowsPerSegment, nRows - (s << shift));
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.PRIVATE,
+					position + s * segmentBytes, 4L * nFeatures * rows);
+			segments[s] = bytes.order(order).asFloatBuffer();
+		}
+	}
+
+	@Override
+	public int nRows() {
+		return nRows;
+	}
+
+	@Override
+	public int nFeatures() {
+		return nFeatures;
+	}
+
+	@Override
+	public int addRow(float[] values) {
+		int row = nRows;
+		FloatBuffer segment = segment(row);
+		int base = (row & mask) * nFeatures;
+		for (int f = 0; f < nFeatures; f++) {
+			segment.put(base + f, values[f]);
+		}
+		nRows++;
+		return row;
+	}
+
+	@Override
+	public void addAll(Store other) {
+		float[] values = new float[nFeatures];
+		for (int row = 0; row < other.nRows(); row++) {
+			for (int f = 0; f < nFeatures; f++) {
+				values[f] = other.get(row, f);
+			}
+			addRow(values);
+		}
+	}
+
+	@Override
+	public float get(int row, int f) {
+		return segments[row >>> shift].get((row & mask) * nFeatures + f);
+	}
+
+	@Override
+	public void set(int row, int f, float value) {
+		segments[row >>> shift].put((row & mask) * nFeatures + f, value);
+	}
+
+	@Override
+	public Point point(int row) {
+		FloatBuffer segment = segments[row >>> shift];
+		int base = (row & mask) * nFeatures;
+		float[] values = new float[nFeatures];
+		for (int f = 0; f < nFeatures; f++) {
+			values[f] = segment.get(base + f);
+		}
+		return new Point(values);
+	}
+
+	@Override
+	public void close() throws IOException {
+		segments = new FloatBuffer[0];
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Get the segment where a row goes, mapping it if it doesn't exist.
+	 *
+	 * @param row
+	 *            row
+	 * @return segment of the row
+	 */
+	private FloatBuffer segment(int row) {
+		int s = row >>> shift;
+		if (s >= segments.length) {
+			segments = Arrays.copyOf(segments,
+					Math.max(s + 1, segments.length * 2));
+		}
+		if (segments[s] == null) {
+			if (channel == null) {
+				throw new IllegalStateException("Store can't grow");
+			}
+			long segmentBytes = 4L * nFeatures * (mask + 1);
+			try {
+				segments[s] = channel
+						.map(FileChannel.MapMode.READ_WRITE, s * segmentBytes,
+								segmentBytes)
+						.order(ByteOrder.nativeOrder()).asFloatBuffer();
+			} catch (IOException e) {
+				throw new IllegalStateException(
+						"Store can't grow: " + e.getMessage(), e);
+			}
+		}
+		return segments[s];
+	}
+
+	/**
+	 * Number of rows of each segment.
+	 *
+	 * @param nFeatures
+	 *            number of features of each row
+	 * @return power of two number of rows that fit in a segment
+	 */
+	private static int rowsPerSegment(int nFeatures) {
+		return Integer.highestOneBit(
+				Math.max(1, SEGMENT_SIZE / (4 * Math.max(1, nFeatures))));
+	}
+}
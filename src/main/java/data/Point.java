@@ -1,35 +1,50 @@
 package data;
 
 import java.util.Arrays;
-import java.util.Set;
 
 /**
- * A point is composed of one or more attributes or features. It has an array
- * with its values of each feature. It also stores information about the
- * features wich have missed values.
+ * A point is composed of one or more attributes or features. Its values are a
+ * slice of an array, so a point can own its values (like a centroid) or be a
+ * lightweight view of a row of a data set. It also stores information about
+ * the features wich have missed values.
  */
 public class Point {
 	/** Array with the values of the features of the point */
 	private float[] values;
+	/** Position of the first feature of the point in the array */
+	private int offset;
+	/** Number of features of the point */
+	private int nFeatures;
 
-	/** List of features that contain missed values */
-	private Set<Integer> missedFeatures;
+	/** Missed values of the data set the point belongs to (null if none) */
+	private MissingMask missing;
+	/** Row of the point in the mask of missed values */
+	private int row;
 
+	/**
+	 * Create a new point that owns its values.
+	 * 
+	 * @param values
+	 *            values of the features
+	 */
 	public Point(float[] values) {
-		this.values = values;
+		this(values, 0, values.length);
 	}
 
 	/**
-	 * Create a new point.
+	 * Create a new point as a view of a slice of an array.
 	 * 
 	 * @param values
-	 *            values of the features
-	 * @param missedFeatures
-	 *            features with no value
+	 *            array that contains the values of the features
+	 * @param offset
+	 *            position of the first feature in the array
+	 * @param nFeatures
+	 *            number of features
 	 */
-	public Point(float[] values, Set<Integer> missedFeatures) {
+	public Point(float[] values, int offset, int nFeatures) {
 		this.values = values;
-		this.missedFeatures = missedFeatures;
+		this.offset = offset;
+		this.nFeatures = nFeatures;
 	}
 
 	/**
@@ -40,16 +55,16 @@ public class Point {
 	 * @return value of the feature
 	 */
 	public float getValue(int feaure) {
-		return values[feaure];
+		return values[offset + feaure];
 	}
 
 	/**
-	 * Get the values of all the features of the point.
+	 * Get a copy of the values of all the features of the point.
 	 * 
 	 * @return array with all the values of the features of the point
 	 */
 	public float[] getValues() {
-		return values;
+		return Arrays.copyOfRange(values, offset, offset + nFeatures);
 	}
 
 	/**
@@ -61,7 +76,7 @@ public class Point {
 	 *            value of the feature
 	 */
 	public void setValue(int f, float value) {
-		this.values[f] = value;
+		this.values[offset + f] = value;
 	}
 
 	/**
@@ -72,15 +87,21 @@ public class Point {
 	 */
 	public void setValues(float[] values) {
 		this.values = values;
+		this.offset = 0;
+		this.nFeatures = values.length;
 	}
 
 	/**
-	 * Get the missed features of the point.
+	 * Set where the missed values of the point are registered.
 	 * 
-	 * @return a map with the missed features
+	 * @param missing
+	 *            mask of missed values
+	 * @param row
+	 *            row of the point in the mask
 	 */
-	public Set<Integer> getMissedFeatures() {
-		return this.missedFeatures;
+	void setMissing(MissingMask missing, int row) {
+		this.missing = missing;
+		this.row = row;
 	}
 
 	/**
@@ -91,7 +112,7 @@ public class Point {
 	 * @return true if missed value false if not
 	 */
 	public boolean isMissedFeature(int f) {
-		return missedFeatures == null ? false : missedFeatures.contains(f);
+		return missing == null ? false : missing.isMissed(row, f);
 	}
 
 	/**
@@ -100,7 +121,7 @@ public class Point {
 	 * @return number of features that the point has
 	 */
 	public int nFeatures() {
-		return values.length;
+		return nFeatures;
 	}
 
 	/**
@@ -111,32 +132,32 @@ public class Point {
 	 *            dataset
 	 * @param target
 	 *            point
-	 * @return Squared Euclidean Distance
+	 * @return Squared Euclidean Distance (only features without missed values)
 	 */
-	public Double squaredEuclidianDistance(DataSet ds, Point target) {
-		Double d = 0D;
-		for (int i = 0; i < this.nFeatures(); i++) {
-			if (!ds.hasMissedValues(i)) {
-				d += Math.pow(values[i] - target.getValue(i), 2.0);
-			}
+	public double squaredEuclidianDistance(DataSet ds, Point target) {
+		double d = 0;
+		for (int f : ds.getCompleteFeatures()) {
+			double diff = values[offset + f] - target.getValue(f);
+			d += diff * diff;
 		}
 		return d;
 	}
 
 	/**
-	 * Determines if two points are the same without taking into account missed
-	 * values.
+	 * Determines if two points are the same without taking into account the
+	 * features with missed values.
 	 * 
 	 * @param ds
 	 *            data set
 	 * @param other
 	 *            point to compare
-	 * @return true / false
+	 * @return true if all the features without missed values are equal
 	 */
 	public boolean equals(DataSet ds, Point other) {
-		for (int i = 0; i < values.length; i++) {
-			if (!ds.hasMissedValues(i)) {
-				return values[i] == other.getValue(i);
+		for (int i = 0; i < nFeatures; i++) {
+			if (!ds.hasMissedValues(i)
+					&& values[offset + i] != other.getValue(i)) {
+				return false;
 			}
 		}
 		return true;
@@ -144,6 +165,6 @@ public class Point {
 
 	@Override
 	public String toString() {
-		return "#P:" + Arrays.toString(values);
+		return "#P:" + Arrays.toString(getValues());
 	}
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reader of the rows of a data set CSV file one by one, without keeping them
+ * in memory. Used to process files that don't fit in memory.
+ */
+public class RowReader implements Closeable {
+	/** Reader of the file */
+	private final MappedCsvReader reader;
+	/** Names of each feature */
+	private final String[] headers;
+	/** Type of each feature */
+	private final String[] types;
+	/** Number of rows read */
+	private long nRows;
+
+	/**
+	 * Open a CSV file and read its headers.
+	 * 
+	 * @param file
+	 *            CSV file with a data set
+	 * @throws IOException
+	 *             error at reading the file or no headers
+	 */
+	public RowReader(File file) throws IOException {
+		reader = new MappedCsvReader(file, DataSet.SEPARATOR,
+				DataSet.ESCAPE_CHAR);
+		headers = reader.readLine();
+		types = reader.readLine();
+		if (headers == null || types == null) {
+			reader.close();
+			throw new IOException("Inconsistent data set. No headers");
+		}
+	}
+
+	/**
+	 * Get the names of the features.
+	 * 
+	 * @return array with the name of each feature
+	 */
+	public String[] getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Get the types of the features.
+	 * 
+	 * @return array with the type of each feature
+	 */
+	public String[] getTypes() {
+		return types;
+	}
+
+	/**
+	 * Read the next row. Missed values are stored as 0 and registered (see
+	 * {@link #nMissed()} and {@link #getMissed(int)}).
+	 * 
+	 * @param values
+	 *            array where to put the values of the row (one per feature)
+	 * @return false if there are no more rows
+	 * @throws IOException
+	 *             error at reading the file or wrong number of values
+	 * @throws NumberFormatException
+	 *             some value isn't a number
+	 */
+	public boolean next(float[] values)
+			throws IOException, NumberFormatException {
+		int nValues = reader.next(values);
+		if (nValues == -1) {
+			return false;
+		}
+		if (nValues != headers.length) {
+			throw new IOException("Inconsistent data set. Row " + (nRows + 3));
+		}
+		nRows++;
+		return true;
+	}
+
+	/**
+	 * Number of missed values of the last row read.
+	 * 
+	 * @return number of features with missed values
+	 */
+	public int nMissed() {
+		return reader.nMissed();
+	}
+
+	/**
+	 * Get a feature with missed value of the last row read.
+	 * 
+	 * @param i
+	 *            position (from 0 to nMissed() - 1)
+	 * @return feature
+	 */
+	public int getMissed(int i) {
+		return reader.getMissed(i);
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -0,0 +1,153 @@
+package data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writer of the rows of a data set to a CSV file one by one. Values of integer
+ * features are rounded. Numbers are formatted straight into a reusable buffer
+ * of bytes that is written to the file by big blocks, so no objects are
+ * created for each row. The output is the same of opencsv: every value quoted
+ * and lines ended with a new line character.
+ */
+public class RowWriter implements Closeable {
+	/** Size of the buffer (1 MB) */
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/** Channel of the file */
+	private final FileChannel channel;
+	/** If each feature is an integer feature */
+	private final boolean[] integer;
+	/** Bytes not written yet */
+	private final byte[] bytes;
+	/** Buffer that wraps the bytes to write them to the channel */
+	private final ByteBuffer buffer;
+	/** Number of bytes not written yet */
+	private int pos;
+
+	/**
+	 * Create a CSV file and write its headers.
+	 *
+	 * @param file
+	 *            CSV file
+	 * @param headers
+	 *            names of each feature
+	 * @param types
+	 *            type of each feature
+	 * @throws IOException
+	 *             error at creating the file
+	 */
+	public RowWriter(File file, String[] headers, String[] types)
+			throws IOException {
+		this.channel = new FileOutputStream(file).getChannel();
+		this.integer = new boolean[types.length];
+		for (int f = 0; f < types.length; f++) {
+			integer[f] = types[f].equals("i");
+		}
+		this.bytes = new byte[BUFFER_SIZE];
+		this.buffer = ByteBuffer.wrap(bytes);
+		this.pos = 0;
+		writeText(headers);
+		writeText(types);
+	}
+
+	/**
+	 * Write a row.
+	 *
+	 * @param values
+	 *            values of the features of the row
+	 * @throws IOException
+	 *             error at writing the file
+	 */
+	public void write(float[] values) throws IOException {
+		for (int f = 0; f < integer.length; f++) {
+			if (bytes.length - pos < NumberFormatter.MAX_LENGTH + 4) {
+				flush();
+			}
+			if (f != 0) {
+				bytes[pos++] = (byte) DataSet.SEPARATOR;
+			}
+			bytes[pos++] = (byte) DataSet.ESCAPE_CHAR;
+			if (integer[f]) {
+				pos = NumberFormatter.format(Math.round(values[f]), bytes, pos);
+			} else {
+				pos = NumberFormatter.format(values[f], bytes, pos);
+			}
+			bytes[pos++] = (byte) DataSet.ESCAPE_CHAR;
+		}
+		if (pos == bytes.length) {
+			flush();
+		}
+		bytes[pos++] = '\n';
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Write a line of text values, doubling the quote characters inside them.
+	 *
+	 * @param line
+	 *            values
+	 * @throws IOException
+	 *             error at writing the file
+	 */
+	private void writeText(String[] line) throws IOException {
+		for (int i = 0; i < line.length; i++) {
+			byte[] text = line[i].getBytes(StandardCharsets.UTF_8);
+			if (i != 0) {
+				put((byte) DataSet.SEPARATOR);
+			}
+			put((byte) DataSet.ESCAPE_CHAR);
+			for (byte b : text) {
+				if (b == DataSet.ESCAPE_CHAR) {
+					put(b);
+				}
+				put(b);
+			}
+			put((byte) DataSet.ESCAPE_CHAR);
+		}
+		put((byte) '\n');
+	}
+
+	/**
+	 * Add a byte to the buffer.
+	 *
+	 * @param b
+	 *            byte
+	 * @throws IOException
+	 *             error at writing the file
+	 */
+	private void put(byte b) throws IOException {
+		if (pos == bytes.length) {
+			flush();
+		}
+		bytes[pos++] = b;
+	}
+
+	/**
+	 * Write the buffer to the file.
+	 *
+	 * @throws IOException
+	 *             error at writing the file
+	 */
+	private void flush() throws IOException {
+		buffer.clear();
+		buffer.limit(pos);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		pos = 0;
+	}
+}
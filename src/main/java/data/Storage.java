@@ -0,0 +1,13 @@
+package data;
+
+/**
+ * Places where the values of a data set can be kept.
+ */
+public enum Storage {
+	/** In arrays of the Java heap */
+	HEAP,
+	/** In a file mapped in memory, out of the Java heap */
+	OFF_HEAP,
+	/** Out of the heap only if the data set may not fit in half the heap */
+	AUTO
+}
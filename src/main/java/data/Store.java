@@ -0,0 +1,84 @@
+package data;
+
+import java.io.IOException;
+
+/**
+ * Storage of the values of the features of all the points of a data set. The
+ * values are kept in primitive arrays or buffers row by row (one row per
+ * point) instead of having an object with its own array for each point.
+ */
+public interface Store {
+
+	/**
+	 * Number of rows.
+	 *
+	 * @return number of rows (points) stored
+	 */
+	int nRows();
+
+	/**
+	 * Number of features.
+	 *
+	 * @return number of values of each row
+	 */
+	int nFeatures();
+
+	/**
+	 * Append a new row at the end of the store.
+	 *
+	 * @param values
+	 *            values of the features of the row (they are copied)
+	 * @return index of the new row
+	 */
+	int addRow(float[] values);
+
+	/**
+	 * Append all the rows of another store at the end of this one.
+	 *
+	 * @param other
+	 *            store with the same number of features
+	 */
+	void addAll(Store other);
+
+	/**
+	 * Get the value of a feature of a row.
+	 *
+	 * @param row
+	 *            row (starting from 0)
+	 * @param f
+	 *            feature (starting from 0)
+	 * @return value
+	 */
+	float get(int row, int f);
+
+	/**
+	 * Set the value of a feature of a row.
+	 *
+	 * @param row
+	 *            row (starting from 0)
+	 * @param f
+	 *            feature (starting from 0)
+	 * @param value
+	 *            new value
+	 */
+	void set(int row, int f, float value);
+
+	/**
+	 * Get a point with the values of a row. It can be a lightweight view of
+	 * the row or a copy of it, depending on the store, so values must be
+	 * changed with {@link #set(int, int, float)}.
+	 *
+	 * @param row
+	 *            row (starting from 0)
+	 * @return point with the values of the row
+	 */
+	Point point(int row);
+
+	/**
+	 * Release the resources of the store.
+	 *
+	 * @throws IOException
+	 *             error at releasing the resources
+	 */
+	void close() throws IOException;
+}
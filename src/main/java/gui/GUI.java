@@ -41,6 +41,8 @@ public class GUI extends JFrame {
 	private File output;
 	/** k for k-means */
 	private int k;
+	/** Biggest k tried to find the best one */
+	private static final int MAX_K = 10;
 	/** Flag */
 	private boolean runned;
 	/** To show messages the console of the GUI */
@@ -57,6 +59,7 @@ public class GUI extends JFrame {
 	private JTextField incompleteDSinput;
 	private JSpinner kInput;
 	private JButton btnRun;
+	private JButton btnFindK;
 	private JTextPane messagesArea;
 	private JButton btnCompare;
 	private JButton btnOriginalDS;
@@ -167,7 +170,15 @@ public class GUI extends JFrame {
 				run();
 			}
 		});
-		btnRun.setBounds(313, 54, 99, 40);
+		btnRun.setBounds(313, 54, 99, 19);
+
+		btnFindK = new JButton("Find k");
+		btnFindK.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				findK();
+			}
+		});
+		btnFindK.setBounds(313, 75, 99, 19);
 
 		// Messages
 		JLabel lblMessagesArea = new JLabel("Messages:");
@@ -237,6 +248,7 @@ public class GUI extends JFrame {
 		contentPane.add(lblKmean);
 		contentPane.add(kInput);
 		contentPane.add(btnRun);
+		contentPane.add(btnFindK);
 		contentPane.add(lblMessagesArea);
 		contentPane.add(scrollPane);
 		contentPane.add(separator);
@@ -269,6 +281,29 @@ public class GUI extends JFrame {
 		}
 	}
 
+	/**
+	 * Find the best k for the data set selected in the GUI, trying from 2 to
+	 * {@link #MAX_K} (or the k selected if it is bigger), and select it.
+	 */
+	private void findK() {
+		messagesArea.setText("");
+		try {
+			if (incompleteDS != null) {
+				int maxK = Math.max(MAX_K, (int) kInput.getValue());
+				kInput.setValue(App.chooseK(incompleteDS, 2, maxK));
+			} else {
+				System.err.println("ERROR: program not configured");
+			}
+		} catch (IOException e) {
+			System.err.println(
+					"ERROR: at processing data set. " + e.getMessage());
+		} catch (NumberFormatException e) {
+			System.err.println("ERROR: wrong value. " + e.getMessage());
+		} catch (Exception e) {
+			System.err.println("ERROR. " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Compare the original data set with the output data set and show the
 	 * results in the GUI.
@@ -0,0 +1,240 @@
+package clustering;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import data.DataSet;
+
+/**
+ * Tests of {@link KMeans}: every {@link Algorithm} must build the same
+ * clusters as the Lloyd loop, and several runs must never be worse than the
+ * first one alone.
+ */
+public class KMeansTest {
+	/** Fraction of missed values in the features that have them */
+	private static final double MISSED = 0.1;
+
+	@Test
+	public void fewFeatures() throws IOException {
+		assertSameLabels(blobs(20000, 4, 20, 1), 20);
+	}
+
+	@Test
+	public void manyFeatures() throws IOException {
+		assertSameLabels(blobs(20000, 12, 50, 2), 50);
+	}
+
+	@Test
+	public void manyClusters() throws IOException {
+		assertSameLabels(blobs(5000, 3, 200, 3), 200);
+	}
+
+	@Test
+	public void moreClustersThanDistinctPoints() throws IOException {
+		Random random = new Random(4);
+		float[][] distinct = new float[7][5];
+		for (float[] point : distinct) {
+			for (int f = 0; f < point.length; f++) {
+				point[f] = random.nextInt(100);
+			}
+		}
+		float[][] points = new float[500][];
+		for (int p = 0; p < points.length; p++) {
+			points[p] = distinct[random.nextInt(distinct.length)];
+		}
+		assertSameLabels(write(points, random), 12);
+	}
+
+	@Test
+	public void identicalRows() throws IOException {
+		float[][] points = new float[300][];
+		for (int p = 0; p < points.length; p++) {
+			points[p] = new float[] { 1, 2, 3, 4 };
+		}
+		assertSameLabels(write(points, new Random(5)), 4);
+	}
+
+	@Test
+	public void restartsNeverWorse() throws IOException {
+		Random random = new Random(6);
+		float[][] distinct = new float[40][3];
+		for (float[] point : distinct) {
+			for (int f = 0; f < point.length; f++) {
+				point[f] = (float) (random.nextGaussian() * 10);
+			}
+		}
+		float[][] points = new float[3000][];
+		for (int p = 0; p < points.length; p++) {
+			points[p] = distinct[random.nextInt(distinct.length)];
+		}
+		File file = write(points, random);
+		try {
+			DataSet ds = new DataSet(file);
+			ds.standardizePoints();
+			for (int seed = 1; seed <= 5; seed++) {
+				double single = inertia(ds, seed, 1);
+				for (int restarts = 2; restarts <= 6; restarts++) {
+					double inertia = inertia(ds, seed, restarts);
+					assertTrue("Seed " + seed + ", " + restarts + " restarts: "
+							+ inertia + " > " + single, inertia <= single);
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Check that all the algorithms give each point the same cluster as
+	 * {@link Algorithm#LLOYD}.
+	 *
+	 * @param file
+	 *            data set
+	 * @param k
+	 *            number of clusters
+	 * @throws IOException
+	 *             error at reading the data set
+	 */
+	private static void assertSameLabels(File file, int k) throws IOException {
+		try {
+			DataSet ds = new DataSet(file);
+			ds.standardizePoints();
+			int[] expected = labels(ds, Algorithm.LLOYD, k);
+			for (Algorithm algorithm : Algorithm.values()) {
+				assertArrayEquals(algorithm.toString(), expected,
+						labels(ds, algorithm, k));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Cluster a data set.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param algorithm
+	 *            way of assigning the points
+	 * @param k
+	 *            number of clusters
+	 * @return cluster of each point
+	 */
+	private static int[] labels(DataSet ds, Algorithm algorithm, int k) {
+		KMeans kMeans = new KMeans(ds);
+		kMeans.setAlgorithm(algorithm);
+		kMeans.setSeed(k);
+		kMeans.run(k);
+		return kMeans.getLabels();
+	}
+
+	/**
+	 * Cluster a data set with several runs.
+	 *
+	 * @param ds
+	 *            data set (standardized)
+	 * @param seed
+	 *            seed of the first run
+	 * @param restarts
+	 *            number of runs
+	 * @return inertia of the run kept
+	 */
+	private static double inertia(DataSet ds, long seed, int restarts) {
+		KMeans kMeans = new KMeans(ds);
+		kMeans.setSeed(seed);
+		kMeans.setRestarts(restarts);
+		kMeans.run(5);
+		return kMeans.getInertia();
+	}
+
+	/**
+	 * Create points around random centers.
+	 *
+	 * @param n
+	 *            number of points
+	 * @param d
+	 *            number of features
+	 * @param nCenters
+	 *            number of centers
+	 * @param seed
+	 *            seed of the random numbers
+	 * @return file with the points
+	 * @throws IOException
+	 *             error at writing the file
+	 */
+	private static File blobs(int n, int d, int nCenters, long seed)
+			throws IOException {
+		Random random = new Random(seed);
+		float[][] centers = new float[nCenters][d];
+		for (float[] center : centers) {
+			for (int f = 0; f < d; f++) {
+				center[f] = (float) (random.nextDouble() * 100);
+			}
+		}
+		float[][] points = new float[n][d];
+		for (float[] point : points) {
+			float[] center = centers[random.nextInt(nCenters)];
+			for (int f = 0; f < d; f++) {
+				point[f] = (float) (center[f] + random.nextGaussian() * 5);
+			}
+		}
+		return write(points, random);
+	}
+
+	/**
+	 * Write points to a temporary CSV file. The first two features have
+	 * missed values, so they aren't used to measure distances.
+	 *
+	 * @param points
+	 *            values of the points
+	 * @param random
+	 *            random numbers to choose the missed values
+	 * @return file
+	 * @throws IOException
+	 *             error at writing the file
+	 */
+	private static File write(float[][] points, Random random)
+			throws IOException {
+		int nFeatures = points[0].length + 2;
+		StringBuilder csv = new StringBuilder();
+		for (int f = 0; f < nFeatures; f++) {
+			csv.append(f == 0 ? "" : ",").append('f').append(f);
+		}
+		csv.append('\n');
+		for (int f = 0; f < nFeatures; f++) {
+			csv.append(f == 0 ? "d" : ",d");
+		}
+		csv.append('\n');
+		for (float[] point : points) {
+			for (int f = 0; f < 2; f++) {
+				if (random.nextDouble() >= MISSED) {
+					csv.append(random.nextInt(100));
+				}
+				csv.append(',');
+			}
+			for (int f = 0; f < point.length; f++) {
+				csv.append(f == 0 ? "" : ",").append(point[f]);
+			}
+			csv.append('\n');
+		}
+
+		File file = File.createTempFile("kmeans", ".csv");
+		file.deleteOnExit();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(csv.toString().getBytes(StandardCharsets.US_ASCII));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+}
@@ -0,0 +1,268 @@
+package data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link MappedCsvReader}: the numbers parsed straight from the bytes
+ * must be the same floats as the ones of {@link Float#parseFloat(String)}.
+ */
+public class MappedCsvReaderTest {
+	/** Number of values of each row of the files written */
+	private static final int ROW_LENGTH = 10;
+
+	@Test
+	public void fifteenDigits() throws IOException {
+		Random random = new Random(1);
+		List<String> cells = new ArrayList<String>();
+		for (int i = 0; i < 100000; i++) {
+			cells.add(randomDecimal(random, 1 + random.nextInt(15)));
+		}
+		// Too many digits for the fast parser
+		for (int i = 0; i < 1000; i++) {
+			cells.add(randomDecimal(random, 16 + random.nextInt(10)));
+		}
+		cells.add("999999999999999");
+		cells.add("0.000000000000001");
+		cells.add("123456789012345.");
+		cells.add(".123456789012345");
+		cells.add("000000000000000000001.5");
+		cells.add("1.500000000000000000000");
+		assertParsed(cells);
+	}
+
+	@Test
+	public void exponents() throws IOException {
+		Random random = new Random(2);
+		List<String> cells = new ArrayList<String>();
+		for (int exp = -50; exp <= 50; exp++) {
+			for (int i = 0; i < 500; i++) {
+				String mantissa = randomDecimal(random, 1 + random.nextInt(15));
+				cells.add(mantissa + (random.nextBoolean() ? "e" : "E") + exp);
+			}
+			cells.add("1e" + exp);
+			cells.add("9.99999999999999e" + exp);
+		}
+		cells.add("1e+5");
+		cells.add("-2.5E-3");
+		cells.add("3.4028235e38"); // Float.MAX_VALUE
+		cells.add("3.4028236e38"); // Rounds to infinity
+		cells.add("1.17549435E-38"); // Float.MIN_NORMAL
+		cells.add("1.4e-45"); // Float.MIN_VALUE
+		assertParsed(cells);
+	}
+
+	@Test
+	public void halfwayCases() throws IOException {
+		Random random = new Random(3);
+		List<String> cells = new ArrayList<String>();
+		for (int i = 0; i < 20000; i++) {
+			// Exact middle of a float and the next one
+			float value = Float.intBitsToFloat(
+					0x00800000 + random.nextInt(0x7E800000));
+			BigDecimal middle = new BigDecimal(value).add(new BigDecimal(
+					Math.nextUp(value))).divide(BigDecimal.valueOf(2));
+			cells.add(middle.toString());
+			// Almost the middle, with the digits of the fast parser
+			for (RoundingMode mode : new RoundingMode[] { RoundingMode.DOWN,
+					RoundingMode.UP, RoundingMode.HALF_EVEN }) {
+				cells.add(middle.round(new MathContext(15, mode)).toString());
+			}
+		}
+		// Integers in the middle of two floats: the even one is chosen
+		cells.add("16777217");
+		cells.add("16777219");
+		cells.add("33554434");
+		cells.add("33554438");
+		cells.add("0.5000000298023223876953125");
+		cells.add("1.00000005960464477539062500");
+		assertParsed(cells);
+	}
+
+	@Test
+	public void emptyCells() throws IOException {
+		File file = write("1,,3\r\n,2,\r\n,,\n4.5,-0,+6\n");
+		MappedCsvReader reader = new MappedCsvReader(file, ',', '"');
+		try {
+			float[] values = new float[3];
+
+			assertEquals(3, reader.next(values));
+			assertValues(new float[] { 1, 0, 3 }, values);
+			assertMissed(new int[] { 1 }, reader);
+
+			assertEquals(3, reader.next(values));
+			assertValues(new float[] { 0, 2, 0 }, values);
+			assertMissed(new int[] { 0, 2 }, reader);
+
+			assertEquals(3, reader.next(values));
+			assertMissed(new int[] { 0, 1, 2 }, reader);
+
+			assertEquals(3, reader.next(values));
+			assertValues(new float[] { 4.5F, -0F, 6 }, values);
+			assertMissed(new int[0], reader);
+
+			assertEquals(-1, reader.next(values));
+		} finally {
+			reader.close();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void quotedCells() throws IOException {
+		File file = write("\"1.5\",\"\",\"-2e3\",\" 7 \"\n"
+				+ "\"NaN\",\"Infinity\",\"0x1p3\",\"1\"\n");
+		MappedCsvReader reader = new MappedCsvReader(file, ',', '"');
+		try {
+			float[] values = new float[4];
+
+			assertEquals(4, reader.next(values));
+			assertValues(new float[] { 1.5F, 0, -2000, 7 }, values);
+			assertMissed(new int[] { 1 }, reader);
+
+			assertEquals(4, reader.next(values));
+			assertValues(new float[] { Float.NaN, Float.POSITIVE_INFINITY, 8,
+					1 }, values);
+			assertMissed(new int[0], reader);
+
+			assertEquals(-1, reader.next(values));
+		} finally {
+			reader.close();
+			file.delete();
+		}
+	}
+
+	/**
+	 * Create a random decimal number, with a random sign and position of the
+	 * decimal point.
+	 *
+	 * @param random
+	 *            random numbers
+	 * @param nDigits
+	 *            number of digits
+	 * @return number
+	 */
+	private static String randomDecimal(Random random, int nDigits) {
+		StringBuilder number = new StringBuilder();
+		int point = random.nextInt(nDigits + 2) - 1; // -1 for no point
+		switch (random.nextInt(4)) {
+		case 0:
+			number.append('-');
+			break;
+		case 1:
+			number.append('+');
+			break;
+		}
+		for (int i = 0; i < nDigits; i++) {
+			if (i == point) {
+				number.append('.');
+			}
+			number.append((char) ('0' + random.nextInt(10)));
+		}
+		if (point == nDigits) {
+			number.append('.');
+		}
+		return number.toString();
+	}
+
+	/**
+	 * Check that the cells written to a file are read as the same floats
+	 * returned by {@link Float#parseFloat(String)}.
+	 *
+	 * @param cells
+	 *            numbers
+	 * @throws IOException
+	 *             error at writing or reading the file
+	 */
+	private static void assertParsed(List<String> cells) throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < cells.size(); i++) {
+			content.append(cells.get(i));
+			content.append(i % ROW_LENGTH == ROW_LENGTH - 1
+					|| i == cells.size() - 1 ? '\n' : ',');
+		}
+		File file = write(content.toString());
+		MappedCsvReader reader = new MappedCsvReader(file, ',', '"');
+		try {
+			float[] values = new float[ROW_LENGTH];
+			for (int i = 0; i < cells.size(); i += ROW_LENGTH) {
+				int nValues = reader.next(values);
+				assertEquals(Math.min(ROW_LENGTH, cells.size() - i), nValues);
+				for (int j = 0; j < nValues; j++) {
+					String cell = cells.get(i + j);
+					assertEquals(cell,
+							Float.floatToIntBits(Float.parseFloat(cell)),
+							Float.floatToIntBits(values[j]));
+				}
+			}
+			assertEquals(-1, reader.next(values));
+		} finally {
+			reader.close();
+			file.delete();
+		}
+	}
+
+	/**
+	 * Check the values of a row.
+	 *
+	 * @param expected
+	 *            expected values
+	 * @param values
+	 *            values read
+	 */
+	private static void assertValues(float[] expected, float[] values) {
+		for (int f = 0; f < expected.length; f++) {
+			assertEquals("Value " + f, Float.floatToIntBits(expected[f]),
+					Float.floatToIntBits(values[f]));
+		}
+	}
+
+	/**
+	 * Check the missed values of the last row read.
+	 *
+	 * @param expected
+	 *            features expected to be missed
+	 * @param reader
+	 *            reader
+	 */
+	private static void assertMissed(int[] expected, MappedCsvReader reader) {
+		assertEquals(expected.length, reader.nMissed());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], reader.getMissed(i));
+		}
+	}
+
+	/**
+	 * Write a temporary file.
+	 *
+	 * @param content
+	 *            content of the file
+	 * @return file
+	 * @throws IOException
+	 *             error at writing the file
+	 */
+	private static File write(String content) throws IOException {
+		File file = File.createTempFile("mapped", ".csv");
+		file.deleteOnExit();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes(StandardCharsets.US_ASCII));
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+}
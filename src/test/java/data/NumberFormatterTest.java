@@ -0,0 +1,129 @@
+package data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link NumberFormatter}: every float written must be read back by
+ * {@link Float#parseFloat(String)} as the same float.
+ */
+public class NumberFormatterTest {
+	/** Number of random floats checked */
+	private static final int N_RANDOM = 1000000;
+
+	@Test
+	public void randomFloats() {
+		Random random = new Random(1);
+		for (int i = 0; i < N_RANDOM; i++) {
+			float value = Float.intBitsToFloat(random.nextInt());
+			if (!Float.isNaN(value)) {
+				assertRoundTrip(value);
+			}
+		}
+	}
+
+	@Test
+	public void integers() {
+		for (int i = -100000; i <= 100000; i++) {
+			assertRoundTrip(i);
+		}
+		for (int shift = 0; shift < 32; shift++) {
+			assertRoundTrip((float) (1L << shift));
+			assertRoundTrip((float) ((1L << shift) + 1));
+			assertRoundTrip((float) ((1L << shift) - 1));
+		}
+	}
+
+	@Test
+	public void zeros() {
+		assertRoundTrip(0F);
+		assertRoundTrip(-0F);
+	}
+
+	@Test
+	public void subnormals() {
+		assertRoundTrip(Float.MIN_VALUE);
+		assertRoundTrip(-Float.MIN_VALUE);
+		assertRoundTrip(Math.nextDown(Float.MIN_NORMAL));
+		Random random = new Random(2);
+		for (int i = 0; i < 10000; i++) {
+			float value = Float.intBitsToFloat(random.nextInt(0x800000));
+			assertRoundTrip(value);
+			assertRoundTrip(-value);
+		}
+	}
+
+	@Test
+	public void negatives() {
+		Random random = new Random(3);
+		for (int i = 0; i < 100000; i++) {
+			assertRoundTrip(-Float.intBitsToFloat(random.nextInt(0x7F800000)));
+		}
+		assertRoundTrip(-1F);
+		assertRoundTrip(-Float.MAX_VALUE);
+	}
+
+	@Test
+	public void exponentBoundaries() {
+		assertRoundTrip(Float.MIN_NORMAL);
+		assertRoundTrip(Float.MAX_VALUE);
+		assertRoundTrip(Math.nextDown(Float.MAX_VALUE));
+		assertRoundTrip(Float.POSITIVE_INFINITY);
+		assertRoundTrip(Float.NEGATIVE_INFINITY);
+
+		// Powers of two and of ten, and their neighbours
+		for (int e = -149; e <= 127; e++) {
+			assertNeighbours((float) Math.pow(2, e));
+		}
+		for (int e = -45; e <= 38; e++) {
+			assertNeighbours(Float.parseFloat("1e" + e));
+		}
+
+		// Where Float.toString changes to scientific notation
+		assertNeighbours(1e-3F);
+		assertNeighbours(1e7F);
+	}
+
+	@Test
+	public void ints() {
+		int[] values = { 0, 1, -1, 9, 10, 99, 100, 123456789, -987654321,
+				Integer.MAX_VALUE, Integer.MIN_VALUE };
+		byte[] bytes = new byte[NumberFormatter.MAX_LENGTH];
+		for (int value : values) {
+			int length = NumberFormatter.format(value, bytes, 0);
+			assertEquals(Integer.toString(value),
+					new String(bytes, 0, length, StandardCharsets.US_ASCII));
+		}
+	}
+
+	/**
+	 * Check a float and the floats just below and above it.
+	 *
+	 * @param value
+	 *            float
+	 */
+	private static void assertNeighbours(float value) {
+		assertRoundTrip(Math.nextDown(value));
+		assertRoundTrip(value);
+		assertRoundTrip(Math.nextUp(value));
+	}
+
+	/**
+	 * Check that a float is read back as the same float.
+	 *
+	 * @param value
+	 *            float
+	 */
+	private static void assertRoundTrip(float value) {
+		byte[] bytes = new byte[NumberFormatter.MAX_LENGTH];
+		int length = NumberFormatter.format(value, bytes, 0);
+		String text = new String(bytes, 0, length, StandardCharsets.US_ASCII);
+		assertEquals(Float.toString(value) + " written as " + text,
+				Float.floatToIntBits(value),
+				Float.floatToIntBits(Float.parseFloat(text)));
+	}
+}